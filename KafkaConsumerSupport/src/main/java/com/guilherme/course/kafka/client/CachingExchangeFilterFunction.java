@@ -0,0 +1,169 @@
+package com.guilherme.course.kafka.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache de respostas na frente do WebClient, para as chamadas GET idempotentes ao serviço remoto. Usado pelo
+ *  businessLogic do KafkaConsumers e pelo TransferService do S15TransferService.
+ *
+ * Por que existe?
+ *  - Todo registro (ou transferência) chamava o mesmo GET /response/200 e ficava bloqueado esperando a resposta
+ *  - A resposta de uma rota idempotente pode ser reaproveitada por um tempo, sem ir ao serviço remoto
+ *
+ * Como funciona:
+ *  - Só as rotas com TTL em app.remote.cache.route-ttls são cacheadas (GET, por URL completa). O resto passa direto
+ *  - Só respostas 2xx entram no cache, cada uma válida pelo TTL da sua rota
+ *  - O cache tem no máximo `max-entries` respostas: passando disso, sai a usada há mais tempo (LRU)
+ *  - Single-flight: várias chamadas da mesma URL que não acharam nada no cache compartilham uma única requisição
+ *  - Uma requisição com Cache-Control: no-cache ignora o cache (ex.: o probe do RemoteServiceCircuitBreaker)
+ *
+ * Não é um @Component: cada serviço cria o seu no WebClientConfig, com as propriedades app.remote.cache.*
+ *
+ * Métricas:
+ *  - remote.cache.requests (tag result): hit, miss (fez a requisição) e coalesced (esperou a requisição de outra chamada)
+ *  - remote.cache.hit.ratio: hits / (hits + misses + coalesced)
+ *  - remote.cache.size: respostas no cache
+ */
+public class CachingExchangeFilterFunction implements ExchangeFilterFunction {
+    private final boolean enabled;
+    private final Map<String, Long> ttlByRoute = new HashMap<>();
+    private final Map<String, Mono<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, CachedResponse> cache;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter coalescedCounter;
+
+    // routeTtls no formato rota=ttl-ms,rota=ttl-ms (ex.: /response/200=60000)
+    public CachingExchangeFilterFunction(MeterRegistry meterRegistry, boolean enabled, int maxEntries, String routeTtls) {
+        this.enabled = enabled;
+
+        for (String route : routeTtls.split(",")) {
+            String[] routeAndTtl = route.trim().split("=");
+            if (routeAndTtl.length == 2) {
+                ttlByRoute.put(routeAndTtl[0].trim(), Long.parseLong(routeAndTtl[1].trim()));
+            }
+        }
+
+        // LinkedHashMap em ordem de acesso descarta a resposta usada há mais tempo quando passa do limite
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        hitCounter = cacheCounter(meterRegistry, "hit");
+        missCounter = cacheCounter(meterRegistry, "miss");
+        coalescedCounter = cacheCounter(meterRegistry, "coalesced");
+
+        Gauge.builder("remote.cache.hit.ratio", this, filter -> filter.hitRatio())
+                .description("Share of cacheable remote calls answered from the response cache")
+                .register(meterRegistry);
+        Gauge.builder("remote.cache.size", this, filter -> filter.size())
+                .description("Responses in the remote response cache")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        Long ttlMs = enabled && HttpMethod.GET.equals(request.method()) ? ttlByRoute.get(request.url().getPath()) : null;
+        String cacheControl = request.headers().getCacheControl();
+        if (ttlMs == null || cacheControl != null && cacheControl.contains("no-cache")) {
+            return next.exchange(request);
+        }
+
+        String key = request.url().toString();
+        CachedResponse cached = get(key);
+        if (cached != null) {
+            hitCounter.increment();
+            return Mono.just(cached.toClientResponse());
+        }
+
+        boolean[] leader = { false };
+        Mono<CachedResponse> response = inFlight.computeIfAbsent(key, ignored -> {
+            leader[0] = true;
+            return fetch(key, request, next, ttlMs);
+        });
+        (leader[0] ? missCounter : coalescedCounter).increment();
+
+        return response.map(CachedResponse::toClientResponse);
+    }
+
+    // A requisição compartilhada: cache() entrega o mesmo resultado para todas as chamadas que esperam por ela
+    private Mono<CachedResponse> fetch(String key, ClientRequest request, ExchangeFunction next, long ttlMs) {
+        return next.exchange(request)
+                .flatMap(response -> response.bodyToMono(byte[].class)
+                        .defaultIfEmpty(new byte[0])
+                        .map(body -> new CachedResponse(
+                                response.statusCode(),
+                                HttpHeaders.readOnlyHttpHeaders(response.headers().asHttpHeaders()),
+                                body,
+                                System.currentTimeMillis() + ttlMs
+                        )))
+                .doOnNext(response -> {
+                    if (response.status().is2xxSuccessful()) {
+                        put(key, response);
+                    }
+                })
+                .doFinally(signal -> inFlight.remove(key))
+                .cache();
+    }
+
+    private synchronized CachedResponse get(String key) {
+        CachedResponse cached = cache.get(key);
+        if (cached != null && cached.expiresAt() <= System.currentTimeMillis()) {
+            cache.remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    private synchronized void put(String key, CachedResponse response) {
+        cache.put(key, response);
+    }
+
+    private synchronized int size() {
+        return cache.size();
+    }
+
+    private double hitRatio() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count() + coalescedCounter.count();
+        return total > 0 ? hits / total : 0.0;
+    }
+
+    private static Counter cacheCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("remote.cache.requests")
+                .description("Cacheable remote calls by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    // Cada chamada recebe um ClientResponse novo, já que o body de um ClientResponse só pode ser lido uma vez
+    private record CachedResponse(HttpStatusCode status, HttpHeaders headers, byte[] body, long expiresAt) {
+        ClientResponse toClientResponse() {
+            return ClientResponse.create(status)
+                    .headers(responseHeaders -> responseHeaders.putAll(headers))
+                    .body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body)))
+                    .build();
+        }
+    }
+}
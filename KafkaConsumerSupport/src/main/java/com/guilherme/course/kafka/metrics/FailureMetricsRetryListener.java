@@ -0,0 +1,43 @@
+package com.guilherme.course.kafka.metrics;
+
+import com.guilherme.course.kafka.retry.RetryTopicRouter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.RetryListener;
+import org.springframework.kafka.listener.SeekUtils;
+
+/*
+ * Conta as falhas dos listeners a partir do DefaultErrorHandler, então vale para os modos record, batch e parallel,
+ *  tanto no tópico principal quanto nos tiers de retry
+ *
+ * Métricas:
+ *  - kafka.consumer.failures (tags topic e type=retryable|not_retryable)
+ *  - kafka.consumer.dlt.published (tag topic): registros efetivamente publicados no DLT
+ */
+@RequiredArgsConstructor
+public class FailureMetricsRetryListener implements RetryListener {
+    private final MeterRegistry meterRegistry;
+    private final RetryTopicRouter retryTopicRouter;
+
+    @Override
+    public void failedDelivery(ConsumerRecord<?, ?> consumerRecord, Exception exception, int deliveryAttempt) {
+        // Registro de retry que ainda não venceu (ver RetryDelayContainerCustomizer): não é uma falha
+        if (SeekUtils.isBackoffException(exception)) {
+            return;
+        }
+
+        meterRegistry.counter("kafka.consumer.failures",
+                "topic", consumerRecord.topic(),
+                "type", retryTopicRouter.isRetryable(exception) ? "retryable" : "not_retryable"
+        ).increment();
+    }
+
+    // Chamado depois que o DeadLetterPublishingRecoverer publicou o registro (no próximo tier ou no DLT)
+    @Override
+    public void recovered(ConsumerRecord<?, ?> consumerRecord, Exception exception) {
+        if (retryTopicRouter.isDeadLetter(consumerRecord, exception)) {
+            meterRegistry.counter("kafka.consumer.dlt.published", "topic", consumerRecord.topic()).increment();
+        }
+    }
+}
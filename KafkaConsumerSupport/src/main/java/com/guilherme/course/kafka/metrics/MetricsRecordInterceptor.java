@@ -0,0 +1,60 @@
+package com.guilherme.course.kafka.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.kafka.listener.SeekUtils;
+
+/*
+ * Envolve a chamada do listener de cada registro e mede o seu tempo total, por tópico (inclusive os tiers de retry)
+ *
+ * Métrica: kafka.consumer.listener.time (tags topic e outcome=success|failure), com histograma
+ *
+ * Não depende do handler, então é o mesmo mecanismo em qualquer listener de um registro por vez: basta configurar
+ *  no ConcurrentKafkaListenerContainerFactory
+ */
+@RequiredArgsConstructor
+public class MetricsRecordInterceptor implements RecordInterceptor<String, Object> {
+    private final MeterRegistry meterRegistry;
+
+    // O listener roda na mesma thread do intercept, do success/failure e do afterRecord
+    private final ThreadLocal<Timer.Sample> currentSample = new ThreadLocal<>();
+
+    @Override
+    public ConsumerRecord<String, Object> intercept(ConsumerRecord<String, Object> consumerRecord, Consumer<String, Object> consumer) {
+        currentSample.set(Timer.start(meterRegistry));
+        return consumerRecord;
+    }
+
+    @Override
+    public void success(ConsumerRecord<String, Object> consumerRecord, Consumer<String, Object> consumer) {
+        stop(consumerRecord, "success");
+    }
+
+    @Override
+    public void failure(ConsumerRecord<String, Object> consumerRecord, Exception exception, Consumer<String, Object> consumer) {
+        // Registro de retry devolvido à partição antes do horário (ver RetryDelayContainerCustomizer): não é medido
+        if (SeekUtils.isBackoffException(exception)) {
+            currentSample.remove();
+            return;
+        }
+        stop(consumerRecord, "failure");
+    }
+
+    private void stop(ConsumerRecord<String, Object> consumerRecord, String outcome) {
+        Timer.Sample sample = currentSample.get();
+        if (sample == null) {
+            return;
+        }
+        currentSample.remove();
+
+        sample.stop(Timer.builder("kafka.consumer.listener.time")
+                .tag("topic", consumerRecord.topic())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,111 @@
+package com.guilherme.course.kafka.retry;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/*
+ * Mede periodicamente o backlog (lag) do consumer group em cada tópico: a soma, por partição, da diferença entre o
+ *  último offset do tópico e o offset commitado pelo grupo
+ *
+ * Métrica: kafka.consumer.backlog (tag topic), para o tópico principal do serviço e para cada tier de retry. Um tier
+ *  de retry com backlog crescendo indica que o serviço remoto continua falhando
+ *
+ * O refresh é agendado por app.kafka.backlog.refresh-ms, então o serviço precisa de @EnableScheduling
+ */
+@Slf4j
+public class ConsumerLagMonitor implements DisposableBean {
+    private static final Duration ADMIN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final AdminClient adminClient;
+    private final MeterRegistry meterRegistry;
+    private final String groupId;
+    private final List<String> topics;
+    private final Map<String, AtomicLong> backlogByTopic = new ConcurrentHashMap<>();
+
+    public ConsumerLagMonitor(KafkaAdmin kafkaAdmin, MeterRegistry meterRegistry, String groupId, String baseTopic) {
+        this.adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+        this.meterRegistry = meterRegistry;
+        this.groupId = groupId;
+        this.topics = monitoredTopics(baseTopic);
+
+        topics.forEach(this::backlog);
+    }
+
+    private static List<String> monitoredTopics(String baseTopic) {
+        List<String> topics = new ArrayList<>();
+        topics.add(baseTopic);
+        topics.addAll(RetryTopicRouter.retryTopics(baseTopic));
+        return topics;
+    }
+
+    // Último backlog medido do tópico (0 enquanto nada foi medido)
+    public long lag(String topic) {
+        return backlog(topic).get();
+    }
+
+    @Scheduled(fixedDelayString = "${app.kafka.backlog.refresh-ms}")
+    public void refresh() {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = adminClient.listConsumerGroupOffsets(groupId)
+                    .partitionsToOffsetAndMetadata()
+                    .get(ADMIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+
+            Map<TopicPartition, OffsetSpec> latestSpec = committed.keySet().stream()
+                    .filter(partition -> topics.contains(partition.topic()))
+                    .collect(Collectors.toMap(partition -> partition, partition -> OffsetSpec.latest()));
+
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> latest = adminClient.listOffsets(latestSpec)
+                    .all()
+                    .get(ADMIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+
+            Map<String, Long> lagByTopic = new HashMap<>();
+            latest.forEach((partition, info) -> {
+                OffsetAndMetadata offset = committed.get(partition);
+                long partitionLag = offset != null ? Math.max(0, info.offset() - offset.offset()) : 0;
+                lagByTopic.merge(partition.topic(), partitionLag, Long::sum);
+            });
+
+            topics.forEach(topic -> backlog(topic).set(lagByTopic.getOrDefault(topic, 0L)));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            log.warn("Could not refresh consumer backlog for group {}: {}", groupId, ex.getMessage());
+        }
+    }
+
+    private AtomicLong backlog(String topic) {
+        return backlogByTopic.computeIfAbsent(topic, key -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("kafka.consumer.backlog", value, AtomicLong::get)
+                    .tag("topic", key)
+                    .register(meterRegistry);
+            return value;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        adminClient.close(ADMIN_TIMEOUT);
+    }
+}
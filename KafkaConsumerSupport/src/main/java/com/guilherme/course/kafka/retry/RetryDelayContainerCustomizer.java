@@ -0,0 +1,66 @@
+package com.guilherme.course.kafka.retry;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.config.ContainerCustomizer;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerPartitionPausingBackOffManager;
+import org.springframework.kafka.listener.ContainerPausingBackOffHandler;
+import org.springframework.kafka.listener.KafkaConsumerBackoffManager;
+import org.springframework.kafka.listener.ListenerContainerPauseService;
+import org.springframework.kafka.listener.ListenerContainerRegistry;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.listener.adapter.KafkaBackoffAwareMessageListenerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.time.Clock;
+
+/**
+ * Faz os containers dos tópicos de retry respeitarem o header retry-due-at sem segurar a thread do consumer.
+ *
+ * Fluxo, com o mesmo mecanismo do retry não bloqueante do Spring Kafka (@RetryableTopic):
+ *  1. O listener é embrulhado num KafkaBackoffAwareMessageListenerAdapter, que lê o retry-due-at de cada registro
+ *  2. Registro ainda não vencido: a partição é pausada, a retomada é agendada para o retry-due-at e o adapter lança
+ *      KafkaBackoffException
+ *  3. O DefaultErrorHandler faz o seek de volta para o registro (o RetryTopicRouter.recoverer não publica
+ *      KafkaBackoffException), e o consumer continua fazendo poll das outras partições
+ *  4. No horário, a partição é retomada e o registro é entregue de novo, agora vencido
+ *
+ * Dentro de um tier todos os registros têm o mesmo atraso, então chegam em ordem de retry-due-at: só o primeiro
+ *  registro de cada rajada pausa a partição, os seguintes já estão vencidos. Como a thread do consumer nunca dorme,
+ *  o atraso dos tiers não tem relação com o max.poll.interval.ms.
+ *
+ * As retomadas rodam num scheduler próprio, para não esperar atrás dos jobs @Scheduled do serviço.
+ */
+public class RetryDelayContainerCustomizer
+        implements ContainerCustomizer<String, Object, ConcurrentMessageListenerContainer<String, Object>>, DisposableBean {
+    private final ThreadPoolTaskScheduler resumeScheduler = new ThreadPoolTaskScheduler();
+    private final KafkaConsumerBackoffManager backoffManager;
+
+    public RetryDelayContainerCustomizer(ListenerContainerRegistry listenerContainerRegistry) {
+        resumeScheduler.setThreadNamePrefix("retry-resume-");
+        resumeScheduler.initialize();
+
+        this.backoffManager = new ContainerPartitionPausingBackOffManager(
+                listenerContainerRegistry,
+                new ContainerPausingBackOffHandler(new ListenerContainerPauseService(listenerContainerRegistry, resumeScheduler))
+        );
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void configure(ConcurrentMessageListenerContainer<String, Object> container) {
+        MessageListener<String, Object> listener = (MessageListener<String, Object>) container.getContainerProperties().getMessageListener();
+        container.setupMessageListener(new KafkaBackoffAwareMessageListenerAdapter<>(
+                listener,
+                backoffManager,
+                container.getListenerId(),
+                RetryTopicRouter.RETRY_DUE_AT_HEADER,
+                Clock.systemUTC()
+        ));
+    }
+
+    @Override
+    public void destroy() {
+        resumeScheduler.shutdown();
+    }
+}
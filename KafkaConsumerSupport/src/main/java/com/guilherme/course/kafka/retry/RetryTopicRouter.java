@@ -0,0 +1,196 @@
+package com.guilherme.course.kafka.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.core.convert.ConversionException;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.SeekUtils;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.handler.invocation.MethodArgumentResolutionException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decide para onde vai um registro que falhou no listener, no lugar do retry bloqueante com FixedBackOff.
+ *
+ * Por que existe?
+ *  - Com FixedBackOff(5000, 3), uma RetryableException prendia a partição inteira por 15s, com os registros saudáveis
+ *      esperando atrás dele
+ *  - Agora o registro que falhou sai da partição na hora e vai para um tópico de retry, consumido por outro listener
+ *
+ * Fluxo:
+ *  <topico> -> <topico>-retry-1 -> <topico>-retry-2 -> <topico>-retry-3 -> <topico>-dlt
+ *  - Erro retentável: vai para o próximo tier, com o header retry-due-at = agora + atraso do tier
+ *  - Erro não retentável ou último tier: vai direto para o DLT
+ *  - O atraso cresce exponencialmente: initial-delay-ms * multiplier^(tier - 1)
+ *  - A partição de destino é a mesma do registro original, então a ordem por chave é mantida dentro de cada tier
+ *  - O atraso é respeitado pelo RetryDelayContainerCustomizer, no container dos tópicos de retry
+ *
+ * Não conhece nenhum tópico: cada serviço cria o seu, com as exceções que o seu handler usa para dizer se o erro é
+ *  retentável ou não.
+ *
+ * Métrica: kafka.consumer.retry.routed (tags topic e destination), com a quantidade de registros enviados para cada
+ *  tier e para o DLT.
+ */
+@Slf4j
+public class RetryTopicRouter {
+    public static final int RETRY_TIERS = 3;
+    public static final String RETRY_ATTEMPT_HEADER = "retry-attempt";
+    public static final String RETRY_DUE_AT_HEADER = "retry-due-at";
+
+    private static final String RETRY_SUFFIX = "-retry-";
+    private static final String DLT_SUFFIX = "-dlt";
+    private static final Pattern RETRY_TOPIC_PATTERN = Pattern.compile("^(.+)" + RETRY_SUFFIX + "(\\d+)$");
+
+    private final MeterRegistry meterRegistry;
+    private final long initialDelayMs;
+    private final double multiplier;
+    private final Class<? extends Throwable> retryableException;
+    private final Class<? extends Throwable> notRetryableException;
+
+    public RetryTopicRouter(
+            MeterRegistry meterRegistry,
+            long initialDelayMs,
+            double multiplier,
+            Class<? extends Throwable> retryableException,
+            Class<? extends Throwable> notRetryableException
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.initialDelayMs = initialDelayMs;
+        this.multiplier = multiplier;
+        this.retryableException = retryableException;
+        this.notRetryableException = notRetryableException;
+    }
+
+    public static String retryTopic(String baseTopic, int tier) {
+        return baseTopic + RETRY_SUFFIX + tier;
+    }
+
+    public static List<String> retryTopics(String baseTopic) {
+        List<String> topics = new ArrayList<>(RETRY_TIERS);
+        for (int tier = 1; tier <= RETRY_TIERS; tier++) {
+            topics.add(retryTopic(baseTopic, tier));
+        }
+        return topics;
+    }
+
+    public static String deadLetterTopic(String baseTopic) {
+        return baseTopic + DLT_SUFFIX;
+    }
+
+    // Tópico original de um tópico de retry (<topico>-retry-N -> <topico>). Qualquer outro tópico volta sem mudança
+    public static String baseTopic(String topic) {
+        Matcher matcher = RETRY_TOPIC_PATTERN.matcher(topic);
+        return matcher.matches() ? matcher.group(1) : topic;
+    }
+
+    public long delayMs(int tier) {
+        return (long) (initialDelayMs * Math.pow(multiplier, tier - 1.0));
+    }
+
+    /*
+     * Recoverer do DefaultErrorHandler: publica o registro no destino do resolve, com os headers do headers
+     *
+     * Um registro de retry que ainda não venceu chega aqui com uma KafkaBackoffException (ver
+     *  RetryDelayContainerCustomizer). Ele não pode ser publicado: a exceção é relançada e o DefaultErrorHandler faz
+     *  o seek de volta para o mesmo offset, igual ao recoverer do retry não bloqueante do próprio Spring Kafka
+     */
+    public DeadLetterPublishingRecoverer recoverer(KafkaOperations<?, ?> kafkaOperations) {
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(kafkaOperations, this::resolve) {
+
+            @Override
+            public void accept(ConsumerRecord<?, ?> consumerRecord, @Nullable Consumer<?, ?> consumer, Exception exception) {
+                if (SeekUtils.isBackoffException(exception)) {
+                    throw (NestedRuntimeException) exception;
+                }
+                super.accept(consumerRecord, consumer, exception);
+            }
+        };
+        recoverer.setHeadersFunction(this::headers);
+        return recoverer;
+    }
+
+    // Usado como destinationResolver do DeadLetterPublishingRecoverer
+    public TopicPartition resolve(ConsumerRecord<?, ?> consumerRecord, Exception exception) {
+        String baseTopic = baseTopic(consumerRecord.topic());
+        int nextTier = nextTier(consumerRecord, exception);
+
+        String destination = nextTier > 0 ? retryTopic(baseTopic, nextTier) : deadLetterTopic(baseTopic);
+        log.warn("Record {}-{}@{} failed, sending it to {}: {}",
+                consumerRecord.topic(), consumerRecord.partition(), consumerRecord.offset(), destination, exception.getMessage());
+
+        meterRegistry.counter("kafka.consumer.retry.routed",
+                "topic", baseTopic,
+                "destination", nextTier > 0 ? "retry-" + nextTier : "dlt"
+        ).increment();
+
+        return new TopicPartition(destination, consumerRecord.partition());
+    }
+
+    // Usado como headersFunction do DeadLetterPublishingRecoverer: tier e horário a partir do qual pode ser reprocessado
+    public Headers headers(ConsumerRecord<?, ?> consumerRecord, Exception exception) {
+        RecordHeaders headers = new RecordHeaders();
+
+        int nextTier = nextTier(consumerRecord, exception);
+        if (nextTier > 0) {
+            headers.add(RETRY_ATTEMPT_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(nextTier).array());
+            headers.add(RETRY_DUE_AT_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(System.currentTimeMillis() + delayMs(nextTier)).array());
+        }
+        return headers;
+    }
+
+    // Se o registro que falhou com essa exceção vai (ou foi) para o DLT
+    public boolean isDeadLetter(ConsumerRecord<?, ?> consumerRecord, Exception exception) {
+        return nextTier(consumerRecord, exception) == 0;
+    }
+
+    // Próximo tier de retry, ou 0 quando o registro deve ir para o DLT
+    private int nextTier(ConsumerRecord<?, ?> consumerRecord, Exception exception) {
+        int nextTier = attempt(consumerRecord) + 1;
+        return isRetryable(exception) && nextTier <= RETRY_TIERS ? nextTier : 0;
+    }
+
+    // O DeadLetterPublishingRecoverer copia os headers originais, então o valor mais recente é o último
+    private static int attempt(ConsumerRecord<?, ?> consumerRecord) {
+        Header header = consumerRecord.headers().lastHeader(RETRY_ATTEMPT_HEADER);
+        return header != null ? ByteBuffer.wrap(header.value()).getInt() : 0;
+    }
+
+    /*
+     * Mesma classificação que o DefaultErrorHandler fazia: a exceção não retentável do serviço e os erros de
+     *  conversão/desserialização nunca são retentados; a exceção retentável e qualquer outro erro são
+     *
+     * Percorre as causas, porque a exceção do listener chega embrulhada (ListenerExecutionFailedException e, nos
+     *  tópicos de retry, TimestampedException)
+     */
+    public boolean isRetryable(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (retryableException.isInstance(cause)) {
+                return true;
+            }
+            if (notRetryableException.isInstance(cause)
+                    || cause instanceof DeserializationException
+                    || cause instanceof MessageConversionException
+                    || cause instanceof ConversionException
+                    || cause instanceof MethodArgumentResolutionException
+                    || cause instanceof ClassCastException) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
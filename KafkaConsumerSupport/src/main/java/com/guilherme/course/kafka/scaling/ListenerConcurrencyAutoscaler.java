@@ -0,0 +1,257 @@
+package com.guilherme.course.kafka.scaling;
+
+import com.guilherme.course.kafka.retry.ConsumerLagMonitor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.KafkaException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Ajusta em tempo de execução a concurrency dos containers do tópico principal do serviço (passado no construtor),
+ *  a partir do backlog do consumer group e do tempo que as threads de consumer passam dentro do listener
+ *
+ * Por que existe?
+ *  - Com a concurrency padrão (1), todas as partições do tópico são atendidas por uma única thread por instância,
+ *      tenha o tópico 10 ou 1 milhão de mensagens de backlog
+ *
+ * A cada app.kafka.autoscaler.interval-ms:
+ *  1. Lê o backlog do tópico (ConsumerLagMonitor)
+ *  2. Calcula a utilização das threads do container: tempo gasto no listener (timer spring.kafka.listener) dividido
+ *      por intervalo x concurrency. Funciona igual nos modos record, batch e parallel
+ *  3. Sobe a concurrency em 1 se o backlog está acima de lag-high E as threads estão ocupadas (utilização acima de
+ *      utilization-high). Backlog alto com threads ociosas significa que o gargalo está em outro lugar, e mais
+ *      threads não ajudariam
+ *  4. Desce a concurrency em 1 se o backlog está abaixo de lag-low E a utilização abaixo de utilization-low
+ *
+ * Para não ficar oscilando (histerese):
+ *  - Os limites de subida e de descida são diferentes (lag-high/lag-low, utilization-high/utilization-low)
+ *  - A condição precisa se repetir em `required-samples` avaliações seguidas
+ *  - Depois de uma mudança, nenhuma outra é feita durante `cooldown-ms`
+ *
+ * A concurrency fica entre min-concurrency e o menor valor entre max-concurrency e o número de partições do tópico
+ *  (threads além disso ficariam sem partição). A mudança só vale depois de reiniciar o container, o que causa um
+ *  rebalance: por isso o cooldown
+ *
+ * Métricas: kafka.consumer.concurrency (tag listener) e kafka.consumer.autoscaler.decisions (tag direction)
+ *
+ * Cada serviço cria o bean no seu KafkaConfig, só com app.kafka.autoscaler.enabled=true. Os limites continuam vindo
+ *  das propriedades app.kafka.autoscaler.*, e a avaliação é agendada, então o serviço precisa de @EnableScheduling
+ */
+@Slf4j
+public class ListenerConcurrencyAutoscaler {
+    private static final String LISTENER_TIMER = "spring.kafka.listener";
+
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+    private final ConsumerLagMonitor consumerLagMonitor;
+    private final KafkaAdmin kafkaAdmin;
+    private final MeterRegistry meterRegistry;
+    private final String topic;
+
+    private final Map<String, ScalingState> states = new ConcurrentHashMap<>();
+
+    @Value("${app.kafka.autoscaler.min-concurrency}")
+    private int minConcurrency;
+
+    @Value("${app.kafka.autoscaler.max-concurrency}")
+    private int maxConcurrency;
+
+    @Value("${app.kafka.autoscaler.lag-high}")
+    private long lagHigh;
+
+    @Value("${app.kafka.autoscaler.lag-low}")
+    private long lagLow;
+
+    @Value("${app.kafka.autoscaler.utilization-high}")
+    private double utilizationHigh;
+
+    @Value("${app.kafka.autoscaler.utilization-low}")
+    private double utilizationLow;
+
+    @Value("${app.kafka.autoscaler.required-samples}")
+    private int requiredSamples;
+
+    @Value("${app.kafka.autoscaler.cooldown-ms}")
+    private long cooldownMs;
+
+    private volatile int partitionCount;
+
+    public ListenerConcurrencyAutoscaler(
+            KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+            ConsumerLagMonitor consumerLagMonitor,
+            KafkaAdmin kafkaAdmin,
+            MeterRegistry meterRegistry,
+            String topic
+    ) {
+        this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+        this.consumerLagMonitor = consumerLagMonitor;
+        this.kafkaAdmin = kafkaAdmin;
+        this.meterRegistry = meterRegistry;
+        this.topic = topic;
+    }
+
+    @Scheduled(fixedDelayString = "${app.kafka.autoscaler.interval-ms}", initialDelayString = "${app.kafka.autoscaler.interval-ms}")
+    public void evaluate() {
+        for (MessageListenerContainer container : kafkaListenerEndpointRegistry.getListenerContainers()) {
+            if (container instanceof ConcurrentMessageListenerContainer<?, ?> concurrentContainer
+                    && listensTo(concurrentContainer, topic)) {
+                evaluate(concurrentContainer);
+            }
+        }
+    }
+
+    private void evaluate(ConcurrentMessageListenerContainer<?, ?> container) {
+        ScalingState state = states.get(container.getListenerId());
+        if (state == null) {    // Primeira avaliação: só registra os valores iniciais dos timers
+            states.put(container.getListenerId(), new ScalingState(container, listenerTimers(container)));
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        double busyMs = state.busyMsSinceLastSample(listenerTimers(container));
+        long windowMs = now - state.lastSampleAt;
+        state.lastSampleAt = now;
+
+        // Container parado, reiniciando ou pausado: a amostra não representa a carga
+        if (!container.isRunning() || container.isPauseRequested() || windowMs <= 0) {
+            state.resetStreaks();
+            return;
+        }
+
+        int concurrency = container.getConcurrency();
+        long lag = consumerLagMonitor.lag(topic);
+        double utilization = busyMs / ((double) windowMs * concurrency);
+        int upperBound = Math.min(maxConcurrency, partitionCount());
+
+        if (lag > lagHigh && utilization > utilizationHigh && concurrency < upperBound) {
+            state.scaleUpStreak++;
+            state.scaleDownStreak = 0;
+        } else if (lag < lagLow && utilization < utilizationLow && concurrency > minConcurrency) {
+            state.scaleDownStreak++;
+            state.scaleUpStreak = 0;
+        } else {
+            state.resetStreaks();
+        }
+
+        log.debug("Autoscaler sample for {}: lag={}, utilization={}, concurrency={}",
+                container.getListenerId(), lag, String.format("%.2f", utilization), concurrency);
+
+        if (now - state.lastChangeAt < cooldownMs) {
+            return;
+        }
+        if (state.scaleUpStreak >= requiredSamples) {
+            resize(container, state, concurrency + 1, "up", lag, utilization);
+        } else if (state.scaleDownStreak >= requiredSamples) {
+            resize(container, state, concurrency - 1, "down", lag, utilization);
+        }
+    }
+
+    private void resize(
+            ConcurrentMessageListenerContainer<?, ?> container,
+            ScalingState state,
+            int newConcurrency,
+            String direction,
+            long lag,
+            double utilization
+    ) {
+        log.info("Scaling {} {} from {} to {} consumers (lag={}, utilization={})",
+                container.getListenerId(), direction, container.getConcurrency(), newConcurrency,
+                lag, String.format("%.2f", utilization));
+
+        state.lastChangeAt = System.currentTimeMillis();
+        state.resetStreaks();
+        state.concurrency.set(newConcurrency);
+        meterRegistry.counter("kafka.consumer.autoscaler.decisions", "direction", direction).increment();
+
+        // A nova concurrency só é aplicada no start. O stop espera os consumers atuais terminarem (e commitarem)
+        container.stop();
+        container.setConcurrency(newConcurrency);
+        container.start();
+    }
+
+    // Timers de cada container filho (<listenerId>-0, <listenerId>-1, ...), com sucesso e com falha
+    private Iterable<Timer> listenerTimers(ConcurrentMessageListenerContainer<?, ?> container) {
+        String prefix = container.getListenerId() + "-";
+        return meterRegistry.find(LISTENER_TIMER).timers().stream()
+                .filter(timer -> {
+                    String name = timer.getId().getTag("name");
+                    return name != null && name.startsWith(prefix);
+                })
+                .toList();
+    }
+
+    private static boolean listensTo(MessageListenerContainer container, String listenedTopic) {
+        String[] topics = container.getContainerProperties().getTopics();
+        return topics != null && Arrays.asList(topics).contains(listenedTopic);
+    }
+
+    // Número de partições do tópico, consultado uma vez. Enquanto não for possível consultar, não limita a subida
+    private int partitionCount() {
+        if (partitionCount == 0) {
+            try {
+                partitionCount = kafkaAdmin.describeTopics(topic)
+                        .get(topic)
+                        .partitions()
+                        .size();
+            } catch (KafkaException ex) {
+                log.warn("Could not describe topic {}: {}", topic, ex.getMessage());
+                return Integer.MAX_VALUE;
+            }
+        }
+        return partitionCount;
+    }
+
+    // Estado do autoscaler para um container
+    private class ScalingState {
+        private final AtomicInteger concurrency;
+        private final Map<Meter.Id, Double> lastBusyMs = new HashMap<>();
+        private long lastSampleAt = System.currentTimeMillis();
+        private long lastChangeAt;
+        private int scaleUpStreak;
+        private int scaleDownStreak;
+
+        private ScalingState(ConcurrentMessageListenerContainer<?, ?> container, Iterable<Timer> timers) {
+            this.concurrency = new AtomicInteger(container.getConcurrency());
+            Gauge.builder("kafka.consumer.concurrency", concurrency, AtomicInteger::get)
+                    .tag("listener", container.getListenerId())
+                    .register(meterRegistry);
+            busyMsSinceLastSample(timers);
+        }
+
+        /*
+         * Tempo gasto no listener desde a última amostra, somando os timers de todos os containers filhos
+         *  Um timer que sumiu ou foi recriado (restart do container) não gera valor negativo
+         */
+        private double busyMsSinceLastSample(Iterable<Timer> timers) {
+            double busyMs = 0;
+            Map<Meter.Id, Double> current = new HashMap<>();
+            for (Timer timer : timers) {
+                double totalMs = timer.totalTime(TimeUnit.MILLISECONDS);
+                busyMs += Math.max(0, totalMs - lastBusyMs.getOrDefault(timer.getId(), 0.0));
+                current.put(timer.getId(), totalMs);
+            }
+            lastBusyMs.clear();
+            lastBusyMs.putAll(current);
+            return busyMs;
+        }
+
+        private void resetStreaks() {
+            scaleUpStreak = 0;
+            scaleDownStreak = 0;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.guilherme.course.kafka.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.JacksonUtils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deserializer JSON em que cada tópico é ligado a um único tipo de evento na criação, no lugar do JsonDeserializer.
+ *
+ * Por que existe?
+ *  - O JsonDeserializer lê os headers de tipo (__TypeId__) a cada registro, confere a classe contra o
+ *      spring.json.trusted.packages e resolve o JavaType por reflection
+ *  - Aqui o ObjectReader de cada tópico é criado uma única vez: por registro, sobra só o parse do JSON
+ *  - Os headers de tipo são ignorados, então só os tipos ligados aos tópicos podem ser criados (whitelist exata, ao
+ *      invés de um pacote inteiro)
+ *
+ * Continua sendo usado dentro do ErrorHandlingDeserializer: JSON inválido ou tópico sem tipo ligado lança
+ *  SerializationException, e a mensagem segue para o DLT.
+ */
+public class TopicBoundJsonDeserializer implements Deserializer<Object> {
+    private final Map<String, ObjectReader> readersByTopic = new HashMap<>();
+
+    public TopicBoundJsonDeserializer(Map<String, Class<?>> eventTypesByTopic) {
+        // Mesma configuração do ObjectMapper do JsonDeserializer (ex.: ignora propriedades desconhecidas)
+        ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+        eventTypesByTopic.forEach((topic, eventType) -> readersByTopic.put(topic, objectMapper.readerFor(eventType)));
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+
+        ObjectReader reader = readersByTopic.get(topic);
+        if (reader == null) {
+            throw new SerializationException("No event type bound to topic " + topic);
+        }
+
+        try {
+            return reader.readValue(data);
+        } catch (IOException ex) {
+            throw new SerializationException("Can't deserialize data from topic " + topic, ex);
+        }
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        return deserialize(topic, data);
+    }
+}
@@ -0,0 +1,121 @@
+package com.guilherme.course.kafka.retry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.KafkaBackoffException;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class RetryTopicRouterTests {
+    private static final String TOPIC = "orders";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RetryTopicRouter router = new RetryTopicRouter(
+            meterRegistry, 1000, 5, RetryableTestException.class, NotRetryableTestException.class
+    );
+
+    @Test
+    void routesRetryableFailureToNextTierOnSamePartition() {
+        ConsumerRecord<String, Object> consumerRecord = new ConsumerRecord<>(TOPIC, 2, 10L, "key", "value");
+        Exception exception = wrapped(new RetryableTestException());
+
+        assertThat(router.resolve(consumerRecord, exception)).isEqualTo(new TopicPartition("orders-retry-1", 2));
+        assertThat(router.isDeadLetter(consumerRecord, exception)).isFalse();
+        assertThat(meterRegistry.counter("kafka.consumer.retry.routed", "topic", TOPIC, "destination", "retry-1").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void routesNotRetryableFailureToDeadLetterTopic() {
+        ConsumerRecord<String, Object> consumerRecord = new ConsumerRecord<>(TOPIC, 0, 10L, "key", "value");
+        Exception exception = wrapped(new NotRetryableTestException());
+
+        assertThat(router.resolve(consumerRecord, exception)).isEqualTo(new TopicPartition("orders-dlt", 0));
+        assertThat(router.isDeadLetter(consumerRecord, exception)).isTrue();
+        assertThat(router.headers(consumerRecord, exception)).isEmpty();
+    }
+
+    @Test
+    void walksEveryTierBeforeTheDeadLetterTopic() {
+        Exception exception = wrapped(new RetryableTestException());
+        ConsumerRecord<String, Object> consumerRecord = new ConsumerRecord<>(TOPIC, 1, 10L, "key", "value");
+
+        for (int tier = 1; tier <= RetryTopicRouter.RETRY_TIERS; tier++) {
+            TopicPartition destination = router.resolve(consumerRecord, exception);
+            assertThat(destination).isEqualTo(new TopicPartition(RetryTopicRouter.retryTopic(TOPIC, tier), 1));
+
+            // O DeadLetterPublishingRecoverer mantém os headers do registro e acrescenta os do router
+            ConsumerRecord<String, Object> republished = new ConsumerRecord<>(destination.topic(), 1, tier, "key", "value");
+            consumerRecord.headers().forEach(republished.headers()::add);
+            router.headers(consumerRecord, exception).forEach(republished.headers()::add);
+            consumerRecord = republished;
+        }
+
+        assertThat(router.resolve(consumerRecord, exception)).isEqualTo(new TopicPartition("orders-dlt", 1));
+    }
+
+    @Test
+    void headersCarryTierAndExponentialDueTime() {
+        ConsumerRecord<String, Object> consumerRecord = new ConsumerRecord<>("orders-retry-1", 0, 10L, "key", "value");
+        consumerRecord.headers().add(RetryTopicRouter.RETRY_ATTEMPT_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(1).array());
+
+        long before = System.currentTimeMillis();
+        Headers headers = router.headers(consumerRecord, new RetryableTestException());
+        long after = System.currentTimeMillis();
+
+        Header attempt = headers.lastHeader(RetryTopicRouter.RETRY_ATTEMPT_HEADER);
+        Header dueAt = headers.lastHeader(RetryTopicRouter.RETRY_DUE_AT_HEADER);
+        assertThat(ByteBuffer.wrap(attempt.value()).getInt()).isEqualTo(2);
+        assertThat(ByteBuffer.wrap(dueAt.value()).getLong()).isBetween(before + 5000, after + 5000);
+    }
+
+    @Test
+    void stripsRetrySuffixFromBaseTopic() {
+        assertThat(RetryTopicRouter.baseTopic("orders-retry-3")).isEqualTo(TOPIC);
+        assertThat(RetryTopicRouter.baseTopic(TOPIC)).isEqualTo(TOPIC);
+        assertThat(RetryTopicRouter.baseTopic("orders-dlt")).isEqualTo("orders-dlt");
+    }
+
+    @Test
+    void conversionErrorsAreNotRetryable() {
+        assertThat(router.isRetryable(wrapped(new ClassCastException()))).isFalse();
+        assertThat(router.isRetryable(wrapped(new IllegalStateException()))).isTrue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recovererRethrowsBackoffWithoutPublishing() {
+        KafkaOperations<String, Object> kafkaOperations = mock(KafkaOperations.class);
+        ConsumerRecord<String, Object> consumerRecord = new ConsumerRecord<>("orders-retry-2", 0, 10L, "key", "value");
+        KafkaBackoffException backoff = new KafkaBackoffException(
+                "not due yet", new TopicPartition("orders-retry-2", 0), "listener", System.currentTimeMillis() + 5000
+        );
+
+        assertThatThrownBy(() -> router.recoverer(kafkaOperations).accept(consumerRecord, null, backoff)).isSameAs(backoff);
+        verify(kafkaOperations, never()).send(any(ProducerRecord.class));
+    }
+
+    private static Exception wrapped(Exception cause) {
+        return new ListenerExecutionFailedException("Listener failed", cause);
+    }
+
+    private static class RetryableTestException extends RuntimeException {
+    }
+
+    private static class NotRetryableTestException extends RuntimeException {
+    }
+}
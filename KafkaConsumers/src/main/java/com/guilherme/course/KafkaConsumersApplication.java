@@ -2,8 +2,10 @@ package com.guilherme.course;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling   // Usado pelo ConsumerLagMonitor
 public class KafkaConsumersApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,34 @@
+package com.guilherme.course.circuitbreaker;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+/*
+ * Pausa todos os containers dos listeners (tópico principal e tiers de retry) quando o circuit breaker abre, e
+ *  retoma quando ele fecha
+ *
+ * Com o container pausado, o consumer continua chamando poll() (não sai do consumer group nem perde as partições),
+ *  mas não recebe registros. Com pauseImmediate (ver KafkaConfig), os registros restantes do poll atual também não
+ *  são entregues: eles são lidos de novo depois do resume, sem precisar de replay
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CircuitBreakerContainerPauser {
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @EventListener
+    public void onStateChanged(CircuitBreakerStateChangedEvent event) {
+        if (event.to() == RemoteServiceCircuitBreaker.State.OPEN && event.from() == RemoteServiceCircuitBreaker.State.CLOSED) {
+            log.warn("Pausing listener containers while the remote service is unavailable");
+            kafkaListenerEndpointRegistry.getListenerContainers().forEach(MessageListenerContainer::pause);
+        } else if (event.to() == RemoteServiceCircuitBreaker.State.CLOSED) {
+            log.info("Resuming listener containers");
+            kafkaListenerEndpointRegistry.getListenerContainers().forEach(MessageListenerContainer::resume);
+        }
+    }
+}
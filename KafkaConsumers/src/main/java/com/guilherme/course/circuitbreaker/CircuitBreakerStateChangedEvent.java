@@ -0,0 +1,8 @@
+package com.guilherme.course.circuitbreaker;
+
+// Publicado pelo RemoteServiceCircuitBreaker a cada mudança de estado
+public record CircuitBreakerStateChangedEvent(
+        RemoteServiceCircuitBreaker.State from,
+        RemoteServiceCircuitBreaker.State to
+) {
+}
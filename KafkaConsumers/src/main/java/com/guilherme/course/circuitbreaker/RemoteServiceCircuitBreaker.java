@@ -0,0 +1,223 @@
+package com.guilherme.course.circuitbreaker;
+
+import com.guilherme.course.exceptions.RetryableException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+
+/*
+ * Circuit breaker da chamada remota do businessLogic (serviço do WebClientConfig)
+ *
+ * Por que existe?
+ *  - Com o serviço remoto fora do ar, todo registro falha, passa pelos tiers de retry e termina no DLT, mesmo que
+ *      fosse processado com sucesso um minuto depois
+ *
+ * Estados:
+ *  - CLOSED    -> chamadas liberadas. Guarda o resultado das últimas `window-size` chamadas; com pelo menos
+ *                  `minimum-calls` e uma taxa de falha >= failure-rate-threshold, vai para OPEN
+ *  - OPEN      -> chamadas recusadas na hora com RetryableException. Os containers dos listeners são pausados
+ *                  (ver CircuitBreakerContainerPauser), então quase nenhum registro chega aqui
+ *  - HALF_OPEN -> depois de `open-wait-ms`, o próprio breaker testa o serviço (probe) a cada `probe-interval-ms`.
+ *                  Com `half-open-probes` sucessos seguidos volta para CLOSED e os containers são retomados; uma
+ *                  falha volta para OPEN
+ *
+ * Só conta como falha o que indica serviço indisponível (RetryableException: erro de conexão/timeout ou status 5xx).
+ *  Um erro não retentável (ex.: 4xx) significa que o serviço respondeu, então conta como sucesso
+ *
+ * Métricas: remote.circuit.breaker.state (0 = CLOSED, 1 = OPEN, 2 = HALF_OPEN) e remote.circuit.breaker.transitions
+ *  (tag to)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RemoteServiceCircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final WebClient webClient;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.remote.circuit-breaker.enabled}")
+    private boolean enabled;
+
+    @Value("${app.remote.circuit-breaker.window-size}")
+    private int windowSize;
+
+    @Value("${app.remote.circuit-breaker.minimum-calls}")
+    private int minimumCalls;
+
+    @Value("${app.remote.circuit-breaker.failure-rate-threshold}")
+    private double failureRateThreshold;
+
+    @Value("${app.remote.circuit-breaker.open-wait-ms}")
+    private long openWaitMs;
+
+    @Value("${app.remote.circuit-breaker.half-open-probes}")
+    private int halfOpenProbes;
+
+    @Value("${app.remote.circuit-breaker.probe-timeout-ms}")
+    private long probeTimeoutMs;
+
+    private volatile State state = State.CLOSED;
+
+    // Janela circular com o resultado das últimas chamadas (true = falha), protegida pelo lock do objeto
+    private boolean[] outcomes;
+    private int nextOutcome;
+    private int recordedCalls;
+    private int failedCalls;
+
+    private long openedAt;
+    private int successfulProbes;
+
+    @PostConstruct
+    void init() {
+        outcomes = new boolean[windowSize];
+        Gauge.builder("remote.circuit.breaker.state", this, breaker -> breaker.state.ordinal())
+                .register(meterRegistry);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /*
+     * Executa a chamada remota se o circuito estiver fechado. Com o circuito aberto (ou em teste), lança
+     *  RetryableException sem chamar o serviço: o registro segue para o retry, como seria com o serviço fora do ar
+     */
+    public void execute(Runnable remoteCall) {
+        if (!enabled) {
+            remoteCall.run();
+            return;
+        }
+
+        if (state != State.CLOSED) {
+            throw new RetryableException("Circuit breaker is " + state + ", remote call not permitted");
+        }
+
+        try {
+            remoteCall.run();
+        } catch (RetryableException ex) {
+            record(true);
+            throw ex;
+        } catch (RuntimeException ex) {
+            record(false);
+            throw ex;
+        }
+        record(false);
+    }
+
+    private void record(boolean failure) {
+        State previous;
+        synchronized (this) {
+            if (state != State.CLOSED) {    // Resultado de uma chamada que começou antes de abrir o circuito
+                return;
+            }
+
+            if (recordedCalls == windowSize) {
+                failedCalls -= outcomes[nextOutcome] ? 1 : 0;
+            } else {
+                recordedCalls++;
+            }
+            outcomes[nextOutcome] = failure;
+            failedCalls += failure ? 1 : 0;
+            nextOutcome = (nextOutcome + 1) % windowSize;
+
+            if (recordedCalls < minimumCalls || (double) failedCalls / recordedCalls < failureRateThreshold) {
+                return;
+            }
+            log.warn("Opening circuit breaker: {} of the last {} remote calls failed", failedCalls, recordedCalls);
+            previous = transitionTo(State.OPEN);
+        }
+        publish(previous, State.OPEN);
+    }
+
+    // Passa de OPEN para HALF_OPEN depois do open-wait-ms e, em HALF_OPEN, testa o serviço remoto
+    @Scheduled(fixedDelayString = "${app.remote.circuit-breaker.probe-interval-ms}")
+    public void probe() {
+        if (!enabled || state == State.CLOSED) {
+            return;
+        }
+
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openWaitMs) {
+                return;
+            }
+            changeState(State.HALF_OPEN);
+        }
+
+        /*
+         * Mesma classificação do execute: só erro de conexão/timeout ou status 5xx indicam serviço indisponível.
+         *  Um 4xx lança WebClientResponseException no retrieve(), mas o serviço respondeu, então o probe passa
+         */
+        boolean healthy;
+        try {
+            webClient.get()
+                    .uri("/response/200")
+                    .header(HttpHeaders.CACHE_CONTROL, "no-cache")     // O probe precisa chegar no serviço remoto
+                    .retrieve()
+                    .toBodilessEntity()
+                    .block(Duration.ofMillis(probeTimeoutMs));
+            healthy = true;
+        } catch (WebClientResponseException ex) {
+            healthy = !ex.getStatusCode().is5xxServerError();
+            if (!healthy) {
+                log.warn("Circuit breaker probe failed with status {}", ex.getStatusCode());
+            }
+        } catch (RuntimeException ex) {     // Sem resposta: conexão recusada, timeout...
+            log.warn("Circuit breaker probe failed: {}", ex.getMessage());
+            healthy = false;
+        }
+
+        if (!healthy) {
+            changeState(State.OPEN);
+        } else if (++successfulProbes >= halfOpenProbes) {
+            changeState(State.CLOSED);
+        }
+    }
+
+    private void changeState(State newState) {
+        State previous;
+        synchronized (this) {
+            previous = transitionTo(newState);
+        }
+        publish(previous, newState);
+    }
+
+    // Chamado com o lock do objeto
+    private State transitionTo(State newState) {
+        State previous = state;
+        state = newState;
+        successfulProbes = 0;
+
+        if (newState == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        } else if (newState == State.CLOSED) {   // Começa uma janela nova
+            nextOutcome = 0;
+            recordedCalls = 0;
+            failedCalls = 0;
+        }
+        return previous;
+    }
+
+    // Fora do lock: os listeners do evento pausam/retomam os containers
+    private void publish(State from, State to) {
+        log.info("Circuit breaker changed from {} to {}", from, to);
+        meterRegistry.counter("remote.circuit.breaker.transitions", "to", to.name()).increment();
+        applicationEventPublisher.publishEvent(new CircuitBreakerStateChangedEvent(from, to));
+    }
+}
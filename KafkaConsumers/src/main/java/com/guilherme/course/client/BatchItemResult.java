@@ -0,0 +1,8 @@
+package com.guilherme.course.client;
+
+// Item da resposta do POST /response/200/batch do MockService
+public record BatchItemResult(
+        String id,
+        int status
+) {
+}
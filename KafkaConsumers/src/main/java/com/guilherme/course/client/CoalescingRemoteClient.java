@@ -0,0 +1,188 @@
+package com.guilherme.course.client;
+
+import com.guilherme.course.exceptions.NotRetryableException;
+import com.guilherme.course.exceptions.RetryableException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Agrupa as chamadas remotas concorrentes do businessLogic em uma única requisição (POST /response/200/batch)
+ *
+ * Por que existe?
+ *  - Cada registro fazia o seu próprio GET /response/200. Nos modos parallel (ou com concurrency > 1), várias
+ *      threads fazem essa mesma chamada ao mesmo tempo, e cada uma paga um round trip inteiro
+ *
+ * Fluxo:
+ *  1. call(id) coloca o id na fila do batch atual e espera o resultado dele
+ *  2. O batch é enviado quando chega a `max-items` ids (pela própria thread que completou o batch) ou quando o primeiro
+ *      id do batch está esperando há `max-wait-ms` (pelo timer)
+ *  3. A resposta tem um resultado por id, na mesma ordem. Cada chamador recebe o seu: 2xx conclui, 5xx lança
+ *      RetryableException e o restante NotRetryableException (mesma classificação da chamada individual)
+ *  4. Se a requisição inteira falhar, todos os chamadores do batch recebem o mesmo erro
+ *
+ * Uma chamada sozinha espera no máximo max-wait-ms a mais do que esperaria antes
+ *
+ * Métricas: remote.batch.size (itens por requisição)
+ */
+@Slf4j
+@Component
+public class CoalescingRemoteClient implements DisposableBean {
+    private static final ParameterizedTypeReference<List<BatchItemResult>> RESULTS_TYPE = new ParameterizedTypeReference<>() {};
+
+    private final WebClient webClient;
+    private final DistributionSummary batchSize;
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("remote-batch-flusher").daemon().factory()
+    );
+
+    @Value("${app.remote.batch.max-items}")
+    private int maxItems;
+
+    @Value("${app.remote.batch.max-wait-ms}")
+    private long maxWaitMs;
+
+    // Batch em formação, protegido pelo lock do objeto
+    private List<PendingCall> pendingCalls = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public CoalescingRemoteClient(WebClient webClient, MeterRegistry meterRegistry) {
+        this.webClient = webClient;
+        this.batchSize = DistributionSummary.builder("remote.batch.size")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    // Bloqueia até o resultado do id chegar. Lança RetryableException ou NotRetryableException, como a chamada individual
+    public void call(String id) {
+        try {
+            enqueue(id).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(String id) {
+        PendingCall pendingCall = new PendingCall(id, new CompletableFuture<>());
+        List<PendingCall> batchToSend = null;
+
+        synchronized (this) {
+            pendingCalls.add(pendingCall);
+
+            if (pendingCalls.size() >= maxItems) {
+                batchToSend = takeBatch();
+            } else if (pendingCalls.size() == 1) {     // Primeiro do batch: começa a contar o max-wait-ms
+                scheduledFlush = flushScheduler.schedule(this::flushOnTimeout, maxWaitMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (batchToSend != null) {
+            send(batchToSend);
+        }
+        return pendingCall.result();
+    }
+
+    private void flushOnTimeout() {
+        List<PendingCall> batchToSend;
+        synchronized (this) {
+            if (pendingCalls.isEmpty()) {   // Já foi enviado por ter chegado ao max-items
+                return;
+            }
+            batchToSend = takeBatch();
+        }
+        send(batchToSend);
+    }
+
+    // Chamado com o lock do objeto
+    private List<PendingCall> takeBatch() {
+        List<PendingCall> batch = pendingCalls;
+        pendingCalls = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    // Não bloqueia: os resultados são distribuídos quando a resposta chegar
+    private void send(List<PendingCall> batch) {
+        batchSize.record(batch.size());
+        log.debug("Sending batch of {} remote calls", batch.size());
+
+        webClient.post()
+                .uri("/response/200/batch")
+                .bodyValue(batch.stream().map(PendingCall::id).toList())
+                .retrieve()
+                .bodyToMono(RESULTS_TYPE)
+                .subscribe(
+                        results -> complete(batch, results),
+                        error -> batch.forEach(pendingCall -> pendingCall.result().completeExceptionally(classify(error)))
+                );
+    }
+
+    private static void complete(List<PendingCall> batch, List<BatchItemResult> results) {
+        if (results.size() != batch.size()) {
+            NotRetryableException ex = new NotRetryableException(
+                    "Batch response has " + results.size() + " results for " + batch.size() + " ids"
+            );
+            batch.forEach(pendingCall -> pendingCall.result().completeExceptionally(ex));
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            HttpStatus status = HttpStatus.resolve(results.get(i).status());
+            CompletableFuture<Void> result = batch.get(i).result();
+
+            if (status != null && status.is2xxSuccessful()) {
+                result.complete(null);
+            } else if (status != null && status.is5xxServerError()) {
+                result.completeExceptionally(new RetryableException("Remote call failed with status " + status));
+            } else {
+                result.completeExceptionally(new NotRetryableException("Remote call failed with status " + results.get(i).status()));
+            }
+        }
+    }
+
+    private static RuntimeException classify(Throwable error) {
+        if (error instanceof WebClientRequestException
+                || (error instanceof WebClientResponseException responseException && responseException.getStatusCode().is5xxServerError())) {
+            return new RetryableException(error);
+        }
+        return new NotRetryableException(error);
+    }
+
+    // Quem ainda está esperando um batch que não foi enviado recebe RetryableException (o registro vai para o retry)
+    @Override
+    public void destroy() {
+        flushScheduler.shutdownNow();
+
+        List<PendingCall> notSent;
+        synchronized (this) {
+            notSent = takeBatch();
+        }
+        notSent.forEach(pendingCall -> pendingCall.result().completeExceptionally(new RetryableException("Client is shutting down")));
+    }
+
+    private record PendingCall(String id, CompletableFuture<Void> result) {
+    }
+}
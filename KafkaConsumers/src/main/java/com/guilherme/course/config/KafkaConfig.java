@@ -1,26 +1,48 @@
 package com.guilherme.course.config;
 
+import com.guilherme.course.events.ProductCreatedEvent;
 import com.guilherme.course.exceptions.NotRetryableException;
 import com.guilherme.course.exceptions.RetryableException;
+import com.guilherme.course.kafka.metrics.FailureMetricsRetryListener;
+import com.guilherme.course.kafka.metrics.MetricsRecordInterceptor;
+import com.guilherme.course.kafka.retry.ConsumerLagMonitor;
+import com.guilherme.course.kafka.retry.RetryDelayContainerCustomizer;
+import com.guilherme.course.kafka.retry.RetryTopicRouter;
+import com.guilherme.course.kafka.scaling.ListenerConcurrencyAutoscaler;
+import com.guilherme.course.kafka.serialization.TopicBoundJsonDeserializer;
+import com.guilherme.course.metrics.ListenerStageMetrics;
+import com.guilherme.course.metrics.TimedDeserializer;
+import com.guilherme.course.offset.OffsetSeekingRebalanceListener;
+import com.guilherme.course.offset.StoredOffsetRetryListener;
+import com.guilherme.course.serialization.ProductCreatedEventDeserializer;
+import com.guilherme.course.util.ConstantUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
-import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.util.backoff.FixedBackOff;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
@@ -42,7 +64,10 @@ public class KafkaConfig {
      *  - Permite injeção de dependênciae gerenciamento pelo Spring
      */
     @Bean
-    public ConsumerFactory<String, Object> consumerFactory() { // Similar ao ProducerFactory, mas para os consumidores
+    public ConsumerFactory<String, Object> consumerFactory( // Similar ao ProducerFactory, mas para os consumidores
+            MeterRegistry meterRegistry,
+            ListenerStageMetrics listenerStageMetrics
+    ) {
         Map<String, Object> config = new HashMap<>();
 
         String placeholder = "{}: {}";
@@ -50,7 +75,8 @@ public class KafkaConfig {
         log.info(placeholder, ConsumerConfig.GROUP_ID_CONFIG, environment.getProperty("spring.kafka.consumer.group-id"));
         log.info(placeholder, JsonDeserializer.TRUSTED_PACKAGES, environment.getProperty("spring.kafka.consumer.properties.spring.json.trusted.packages"));
         log.info(placeholder, ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        log.info(placeholder, ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+        log.info(placeholder, ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ProductCreatedEventDeserializer.class);
+        log.info(placeholder, "app.kafka.consumer.deserializer", environment.getProperty("app.kafka.consumer.deserializer"));
 
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, environment.getProperty("spring.kafka.consumer.bootstrap-servers"));
 
@@ -73,15 +99,55 @@ public class KafkaConfig {
          *                        -> JsonDeserializer (deserializador real) ->
          *                        -> Objeto Java
          *
+         * O deserializador real é o ProductCreatedEventDeserializer, que decodifica o formato binário do
+         *  KafkaProducers e repassa os payloads JSON para o JsonDeserializer
+         *
          * Fluxo quando mensagem está errada:
          *      Mensagem recebida -> ErrorHandlingDeserializer (wrapper) ->
          *                        -> JsonDeserializer (FALHA e lança exceção) ->
          *                        -> ErrorHandlingDeserializer captura e trata exceção
          */
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
-        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, ProductCreatedEventDeserializer.class);
+
+        /*
+         * As classes acima descrevem a cadeia, mas os deserializers são criados aqui (um por consumer) para que o
+         *  ProductCreatedEventDeserializer fique dentro do TimedDeserializer, que mede o tempo de desserialização
+         *  (kafka.consumer.stage{stage=deserialization}). A fábrica ainda chama o configure() de cada um
+         */
+        Timer deserializationTimer = listenerStageMetrics.timer(ListenerStageMetrics.Stage.DESERIALIZATION);
+        DefaultKafkaConsumerFactory<String, Object> factory = new DefaultKafkaConsumerFactory<>(
+                config,
+                StringDeserializer::new,
+                () -> new ErrorHandlingDeserializer<>(new TimedDeserializer<>(productCreatedEventDeserializer(), deserializationTimer))
+        );
+
+        /*
+         * Publica no Micrometer as métricas internas de cada KafkaConsumer (kafka.consumer.*), entre elas o lag por
+         *  partição atribuída: kafka.consumer.fetch.manager.records.lag (tags topic e partition)
+         */
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
 
-        return new DefaultKafkaConsumerFactory<>(config);
+        return factory;
+    }
+
+    /*
+     * Deserializer JSON usado pelo ProductCreatedEventDeserializer (app.kafka.consumer.deserializer):
+     *  - type-headers -> JsonDeserializer: resolve o tipo pelos headers de cada registro e confere os trusted packages
+     *  - topic-bound  -> TopicBoundJsonDeserializer: o tipo de cada tópico (inclusive dos tiers de retry) é fixado
+     *                      aqui, com um ObjectReader criado uma única vez
+     */
+    private ProductCreatedEventDeserializer productCreatedEventDeserializer() {
+        if (!"topic-bound".equals(environment.getProperty("app.kafka.consumer.deserializer", "type-headers"))) {
+            return new ProductCreatedEventDeserializer();
+        }
+
+        Map<String, Class<?>> eventTypesByTopic = new HashMap<>();
+        eventTypesByTopic.put(ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC, ProductCreatedEvent.class);
+        RetryTopicRouter.retryTopics(ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC)
+                .forEach(topic -> eventTypesByTopic.put(topic, ProductCreatedEvent.class));
+
+        return new ProductCreatedEventDeserializer(new TopicBoundJsonDeserializer(eventTypesByTopic));
     }
 
     /**
@@ -100,31 +166,164 @@ public class KafkaConfig {
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(
             ConsumerFactory<String, Object> consumerFactory,
-            KafkaTemplate<String, Object> kafkaTemplate
+            DefaultErrorHandler errorHandler,
+            OffsetSeekingRebalanceListener rebalanceListener,
+            MeterRegistry meterRegistry
     ) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+
+        factory.setConsumerFactory(consumerFactory);
+        factory.setCommonErrorHandler(errorHandler);
+
+        /*
+         * Aquece/descarta a deduplicação em memória conforme as partições são atribuídas/revogadas e, com
+         *  app.kafka.consumer.offset-store=database, faz o seek para o offset gravado no banco
+         */
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+
+        // Ao pausar (ver CircuitBreakerContainerPauser), para depois do registro atual, sem entregar o resto do poll
+        factory.getContainerProperties().setPauseImmediate(true);
+
         /*
-         * O errorHandler será o responsável por pegar as mensagens que deram erro (de serialização) e mandar
-         *  elas para o Dead Letter Topic (DLT)
+         * Modo do listener (app.kafka.consumer.listener-mode):
+         *  - record -> o listener recebe um registro por vez (ProductCreatedEventHandler)
+         *  - batch    -> o listener recebe todos os registros do poll de uma vez (ProductCreatedEventBatchHandler)
+         *  - parallel -> também recebe o poll inteiro, mas processa chaves diferentes em paralelo
+         *                  (ProductCreatedEventParallelHandler)
          *
-         * Ele faz isso usando o KafkaTemplate e por padrão o nome do tópico vai ser: [nome_original_do_topico]-dlt
+         * O mesmo DefaultErrorHandler atende todos os modos. No batch e no parallel, o listener lança
+         *  BatchListenerFailedException indicando o registro que falhou, e só ele vai para o retry/DLT
          */
-        DefaultErrorHandler errorHandler = new DefaultErrorHandler(
-                new DeadLetterPublishingRecoverer(kafkaTemplate),   // Para enviar pro DLT
-                new FixedBackOff(5000, 3)   // Para Retry. Nesse caso, tenta consumir de novo 3 vezes
-                                                                //  com um intervalo de 5s entre as tentativas
-        );
+        factory.setBatchListener(!"record".equals(environment.getProperty("app.kafka.consumer.listener-mode", "record")));
 
-        errorHandler.addNotRetryableExceptions(NotRetryableException.class);  // Se falhar, vai direto para o DLT
-        errorHandler.addRetryableExceptions(RetryableException.class);        // Se falhar, tenta reprocessar antes de ir para o DLT
+        // Tempo total do listener por registro (no modo record). Nos outros modos, as etapas são medidas no service
+        factory.setRecordInterceptor(new MetricsRecordInterceptor(meterRegistry));
 
+        return factory;
+    }
+
+    /*
+     * Factory dos listeners dos tópicos de retry (ProductCreatedEventRetryHandler): sempre um registro por vez, e um
+     *  registro que ainda não chegou no horário do seu retry pausa só a sua partição até lá
+     *  (RetryDelayContainerCustomizer), sem segurar a thread do consumer
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> retryKafkaListenerContainerFactory(
+            ConsumerFactory<String, Object> consumerFactory,
+            DefaultErrorHandler errorHandler,
+            RetryDelayContainerCustomizer retryDelayContainerCustomizer,
+            MeterRegistry meterRegistry
+    ) {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
 
         factory.setConsumerFactory(consumerFactory);
         factory.setCommonErrorHandler(errorHandler);
+        factory.getContainerProperties().setPauseImmediate(true);
+        factory.setContainerCustomizer(retryDelayContainerCustomizer);
+        factory.setRecordInterceptor(new MetricsRecordInterceptor(meterRegistry));
 
         return factory;
     }
 
+    @Bean
+    public RetryDelayContainerCustomizer retryDelayContainerCustomizer(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry) {
+        return new RetryDelayContainerCustomizer(kafkaListenerEndpointRegistry);
+    }
+
+    // Atraso de cada tier = app.kafka.retry.initial-delay-ms * app.kafka.retry.multiplier^(tier - 1)
+    @Bean
+    public RetryTopicRouter retryTopicRouter(MeterRegistry meterRegistry) {
+        return new RetryTopicRouter(
+                meterRegistry,
+                environment.getRequiredProperty("app.kafka.retry.initial-delay-ms", Long.class),
+                environment.getRequiredProperty("app.kafka.retry.multiplier", Double.class),
+                RetryableException.class,
+                NotRetryableException.class
+        );
+    }
+
+    // Backlog do product-created-events e dos seus tiers de retry (kafka.consumer.backlog)
+    @Bean
+    public ConsumerLagMonitor consumerLagMonitor(KafkaAdmin kafkaAdmin, MeterRegistry meterRegistry) {
+        return new ConsumerLagMonitor(
+                kafkaAdmin,
+                meterRegistry,
+                environment.getProperty("spring.kafka.consumer.group-id"),
+                ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC
+        );
+    }
+
+    // Concurrency do listener do tópico principal ajustada pelo backlog (ver ListenerConcurrencyAutoscaler)
+    @Bean
+    @ConditionalOnProperty(name = "app.kafka.autoscaler.enabled", havingValue = "true")
+    public ListenerConcurrencyAutoscaler listenerConcurrencyAutoscaler(
+            KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+            ConsumerLagMonitor consumerLagMonitor,
+            KafkaAdmin kafkaAdmin,
+            MeterRegistry meterRegistry
+    ) {
+        return new ListenerConcurrencyAutoscaler(
+                kafkaListenerEndpointRegistry,
+                consumerLagMonitor,
+                kafkaAdmin,
+                meterRegistry,
+                ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC
+        );
+    }
+
+    /*
+     * O errorHandler será o responsável por pegar as mensagens que deram erro e mandar elas para o próximo tópico de
+     *  retry ou para o Dead Letter Topic (DLT), usando o KafkaTemplate
+     *
+     * Antes era um FixedBackOff(5000, 3): o retry acontecia ali mesmo, e a partição inteira ficava parada por até 15s
+     *  esperando um único registro. Agora não há retry em memória (FixedBackOff(0, 0)): o RetryTopicRouter escolhe
+     *  o destino do registro e o consumo da partição segue na hora
+     *      - RetryableException (ou erro desconhecido) -> [nome_original_do_topico]-retry-N, com atraso exponencial
+     *      - NotRetryableException, erro de desserialização ou fim dos tiers -> [nome_original_do_topico]-dlt
+     *      - Registro de retry antes do horário (KafkaBackoffException) -> não é publicado, volta para a partição
+     */
+    @Bean
+    public DefaultErrorHandler errorHandler(
+            KafkaTemplate<String, Object> kafkaTemplate,
+            RetryTopicRouter retryTopicRouter,
+            FailureMetricsRetryListener failureMetricsRetryListener,
+            StoredOffsetRetryListener storedOffsetRetryListener
+    ) {
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(retryTopicRouter.recoverer(kafkaTemplate), new FixedBackOff(0, 0));
+        // Contadores de falhas e de publicações no DLT, e o avanço do offset gravado no banco do registro roteado
+        errorHandler.setRetryListeners(failureMetricsRetryListener, storedOffsetRetryListener);
+
+        return errorHandler;
+    }
+
+    // Contadores de falhas (kafka.consumer.failures) e de publicações no DLT (kafka.consumer.dlt.published)
+    @Bean
+    public FailureMetricsRetryListener failureMetricsRetryListener(MeterRegistry meterRegistry, RetryTopicRouter retryTopicRouter) {
+        return new FailureMetricsRetryListener(meterRegistry, retryTopicRouter);
+    }
+
+    // Tópicos de retry e DLT, com o mesmo número de partições do tópico original (o registro mantém a partição)
+    @Bean
+    public KafkaAdmin.NewTopics retryTopics() {
+        List<NewTopic> topics = new ArrayList<>();
+        RetryTopicRouter.retryTopics(ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC)
+                .forEach(topic -> topics.add(TopicBuilder.name(topic).partitions(3).replicas(3).build()));
+        topics.add(TopicBuilder.name(RetryTopicRouter.deadLetterTopic(ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC))
+                .partitions(3)
+                .replicas(3)
+                .build());
+
+        return new KafkaAdmin.NewTopics(topics.toArray(NewTopic[]::new));
+    }
+
+    // Usado para criar os tópicos acima e pelo ConsumerLagMonitor
+    @Bean
+    public KafkaAdmin kafkaAdmin() {
+        return new KafkaAdmin(Map.of(
+                AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, environment.getProperty("spring.kafka.consumer.bootstrap-servers")
+        ));
+    }
+
     // Configurações do producer para mandar mensagens para o DLT
     @Bean
     public ProducerFactory<String, Object> producerFactory() {
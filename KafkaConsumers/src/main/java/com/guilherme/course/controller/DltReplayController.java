@@ -0,0 +1,57 @@
+package com.guilherme.course.controller;
+
+import com.guilherme.course.replay.DltReplayCommand;
+import com.guilherme.course.replay.DltReplayJob;
+import com.guilherme.course.replay.DltReplayProgress;
+import com.guilherme.course.replay.DltReplayService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.UUID;
+
+// Replay dos DLTs (ver DltReplayService): o POST inicia o replay em background e o GET acompanha o andamento
+@RestController
+@RequestMapping("/dlt-replays")
+@RequiredArgsConstructor
+public class DltReplayController {
+    private final DltReplayService dltReplayService;
+
+    @PostMapping
+    public ResponseEntity<DltReplayProgress> start(@RequestBody DltReplayCommand command) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(dltReplayService.start(command).progress());
+    }
+
+    @GetMapping
+    public List<DltReplayProgress> findAll() {
+        return dltReplayService.findAll().stream().map(DltReplayJob::progress).toList();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<DltReplayProgress> find(@PathVariable UUID id) {
+        return ResponseEntity.of(dltReplayService.find(id).map(DltReplayJob::progress));
+    }
+
+    // Para depois do registro atual de cada consumer; o que já foi republicado continua republicado
+    @DeleteMapping("/{id}")
+    public ResponseEntity<DltReplayProgress> cancel(@PathVariable UUID id) {
+        return ResponseEntity.of(dltReplayService.find(id).map(job -> {
+            job.cancel();
+            return job.progress();
+        }));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidCommand(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
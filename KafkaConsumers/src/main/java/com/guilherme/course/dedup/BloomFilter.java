@@ -0,0 +1,79 @@
+package com.guilherme.course.dedup;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter de messageIds.
+ *
+ * - mightContain = false -> o messageId com certeza nunca foi adicionado
+ * - mightContain = true  -> talvez tenha sido (a taxa de falso positivo fica perto da configurada enquanto o número
+ *      de ids adicionados não passar de `expectedInsertions`)
+ *
+ * Os bits ficam em um AtomicLongArray, então put e mightContain podem ser chamados por várias threads ao mesmo tempo.
+ */
+public class BloomFilter {
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashFunctions;
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter sizing: " + expectedInsertions + " insertions, " + falsePositiveRate + " false positive rate");
+        }
+
+        // Fórmulas clássicas: m = -n * ln(p) / ln(2)^2 bits e k = m / n * ln(2) funções de hash
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray(Math.toIntExact((bits + Long.SIZE - 1) / Long.SIZE));
+        this.bitCount = (long) words.length() * Long.SIZE;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(UUID messageId) {
+        long hash1 = hash1(messageId);
+        long hash2 = hash2(messageId, hash1);
+
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = index(hash1, hash2, i);
+            long mask = 1L << bit;
+            words.accumulateAndGet((int) (bit >>> 6), mask, (word, m) -> word | m);
+        }
+    }
+
+    public boolean mightContain(UUID messageId) {
+        long hash1 = hash1(messageId);
+        long hash2 = hash2(messageId, hash1);
+
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = index(hash1, hash2, i);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Double hashing (Kirsch-Mitzenmacher): as k posições saem de só dois hashes, hash1 + i * hash2
+    private long index(long hash1, long hash2, int i) {
+        return ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+    }
+
+    // O UUIDv7 tem o timestamp nos bits mais significativos, então os dois lados são misturados antes de usar
+    private static long hash1(UUID messageId) {
+        return mix(messageId.getMostSignificantBits() ^ Long.rotateLeft(messageId.getLeastSignificantBits(), 32));
+    }
+
+    private static long hash2(UUID messageId, long hash1) {
+        return mix(hash1 ^ messageId.getLeastSignificantBits());
+    }
+
+    // Finalizador de 64 bits do MurmurHash3
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
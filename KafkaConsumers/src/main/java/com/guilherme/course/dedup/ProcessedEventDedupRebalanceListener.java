@@ -0,0 +1,49 @@
+package com.guilherme.course.dedup;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/*
+ * Mantém o estado do ProcessedEventDeduplicator alinhado com as partições atribuídas a este consumer
+ *  - Partição atribuída -> agenda o aquecimento do LRU e do Bloom filter a partir do banco
+ *  - Partição revogada ou perdida -> descarta o estado (ou o aquecimento em andamento), já que outro consumer passa
+ *      a processá-la
+ *
+ * O aquecimento roda em background (ver ProcessedEventDeduplicator.warm): o rebalance não espera a leitura do banco,
+ *  e a partição consulta o banco direto até o estado ficar pronto
+ */
+@Component
+@RequiredArgsConstructor
+public class ProcessedEventDedupRebalanceListener implements ConsumerAwareRebalanceListener {
+    private static final String TOPIC = "product-created-events";
+
+    private final ProcessedEventDeduplicator processedEventDeduplicator;
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.stream()
+                .filter(partition -> TOPIC.equals(partition.topic()))
+                .forEach(partition -> processedEventDeduplicator.warm(partition.partition()));
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        release(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        release(partitions);
+    }
+
+    private void release(Collection<TopicPartition> partitions) {
+        partitions.stream()
+                .filter(partition -> TOPIC.equals(partition.topic()))
+                .forEach(partition -> processedEventDeduplicator.release(partition.partition()));
+    }
+}
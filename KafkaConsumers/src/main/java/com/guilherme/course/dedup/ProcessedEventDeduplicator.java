@@ -0,0 +1,371 @@
+package com.guilherme.course.dedup;
+
+import com.guilherme.course.repository.ProcessedMessageId;
+import com.guilherme.course.retention.RetentionWindow;
+import com.guilherme.course.store.ProcessedEventStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Camada de deduplicação em memória na frente do ProcessedEventStore, uma por partição atribuída. Com o store jpa,
+ *  "banco" abaixo é a tabela processed-events; com o mapped, é o índice local.
+ *
+ * Para cada partição:
+ *  - LRU com os messageIds processados mais recentemente -> se está nele, é duplicata (sem ir ao banco)
+ *  - Bloom filters com os messageIds processados         -> se nenhum diz "talvez visto", é mensagem nova (sem ir ao banco)
+ *  - Só quando o Bloom filter diz "talvez visto" e o id não está no LRU é que o banco é consultado
+ *
+ * O estado é montado a partir do banco quando a partição é atribuída e descartado quando ela é revogada
+ *  (ver ProcessedEventDedupRebalanceListener). O aquecimento roda em background, em uma thread própria: o rebalance
+ *  e o primeiro poll não esperam a leitura do banco. Até o estado ficar pronto, a partição vai direto ao banco
+ *  (bypass), como qualquer partição sem estado. Os ids gravados durante o aquecimento também entram no estado em
+ *  construção, então nada gravado depois do início da leitura fica de fora.
+ *
+ * Os Bloom filters são um por bucket de retenção (ver RetentionWindow). Um Bloom filter não permite remover ids, então
+ *  quando um bucket expira o filtro dele inteiro é descartado (expireBucketsBefore), junto com a purga do banco. Assim
+ *  a memória e a taxa de falso positivo ficam estáveis, ao invés de crescerem com todo o histórico. Cada filtro é
+ *  dimensionado para os ids de um bucket (bloom-expected-events-per-second x bucket-ms) e com
+ *  bloom-false-positive-rate / buckets vivos, já que uma consulta passa por todos eles: a taxa total continua perto da
+ *  configurada.
+ *
+ * Um id só entra no LRU/Bloom filter depois do commit da transação que gravou o evento. Se a transação for desfeita,
+ *  a reentrega da mensagem não pode ser confundida com uma duplicata.
+ *
+ * A deduplicação é por partição porque o producer usa o productId como chave: uma duplicata (ex.: reenvio do spool
+ *  do KafkaProducers) cai na mesma partição. Se o número de partições do tópico mudar, o índice único do banco
+ *  continua barrando a gravação em dobro.
+ *
+ * Métricas (product.consumer.dedup, tag result):
+ *  - hit            -> duplicata encontrada no LRU
+ *  - miss           -> Bloom filter garantiu que é nova
+ *  - db_hit         -> Bloom filter disse "talvez" e o banco confirmou a duplicata
+ *  - false_positive -> Bloom filter disse "talvez", mas o banco não tinha o id
+ *  - bypass         -> partição sem estado em memória, consulta feita direto no banco
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProcessedEventDeduplicator {
+    private final ProcessedEventStore processedEventStore;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+    private final RetentionWindow retentionWindow;
+
+    @Value("${app.kafka.consumer.dedup.enabled}")
+    private boolean enabled;
+
+    @Value("${app.kafka.consumer.dedup.lru-size}")
+    private int lruSize;
+
+    @Value("${app.kafka.consumer.dedup.bloom-expected-events-per-second}")
+    private double bloomExpectedEventsPerSecond;
+
+    @Value("${app.kafka.consumer.dedup.bloom-false-positive-rate}")
+    private double bloomFalsePositiveRate;
+
+    private final Map<Integer, PartitionState> partitions = new ConcurrentHashMap<>();
+
+    // Estados ainda sendo carregados do banco. Só passam para `partitions` se a partição não for revogada antes
+    private final Map<Integer, PartitionState> warming = new ConcurrentHashMap<>();
+
+    private ExecutorService warmExecutor;
+    private TransactionTemplate readOnlyTransaction;
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter dbHitCounter;
+    private Counter falsePositiveCounter;
+    private Counter bypassCounter;
+
+    @PostConstruct
+    void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        // Uma partição por vez: com várias atribuídas no mesmo rebalance, o banco não recebe todas as leituras juntas
+        warmExecutor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("dedup-warmer").daemon().factory());
+
+        hitCounter = dedupCounter("hit");
+        missCounter = dedupCounter("miss");
+        dbHitCounter = dedupCounter("db_hit");
+        falsePositiveCounter = dedupCounter("false_positive");
+        bypassCounter = dedupCounter("bypass");
+
+        Gauge.builder("product.consumer.dedup.partitions", partitions, Map::size)
+                .description("Partitions with an in-memory dedup state")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        warmExecutor.shutdownNow();
+    }
+
+    public boolean isProcessed(int partition, UUID messageId) {
+        PartitionState state = partitions.get(partition);
+        if (state == null) {
+            bypassCounter.increment();
+            return processedEventStore.contains(messageId);
+        }
+
+        Decision decision = state.check(messageId);
+        if (decision != Decision.MAYBE) {
+            return decision == Decision.PROCESSED;
+        }
+
+        boolean processed = processedEventStore.contains(messageId);
+        countDatabaseCheck(state, messageId, processed);
+        return processed;
+    }
+
+    // Versão para o modo batch: só os ids marcados como "talvez" vão para uma única consulta no banco
+    public Set<UUID> findProcessed(Collection<Key> keys) {
+        Set<UUID> processed = new HashSet<>();
+        List<Key> toQuery = new ArrayList<>();
+
+        for (Key key : keys) {
+            PartitionState state = partitions.get(key.partition());
+            if (state == null) {
+                bypassCounter.increment();
+                toQuery.add(key);
+                continue;
+            }
+
+            Decision decision = state.check(key.messageId());
+            if (decision == Decision.PROCESSED) {
+                processed.add(key.messageId());
+            } else if (decision == Decision.MAYBE) {
+                toQuery.add(key);
+            }
+        }
+
+        if (toQuery.isEmpty()) {
+            return processed;
+        }
+
+        Set<UUID> processedInDatabase = processedEventStore.findExisting(toQuery.stream().map(Key::messageId).toList());
+
+        for (Key key : toQuery) {
+            PartitionState state = partitions.get(key.partition());
+            if (state != null) {
+                countDatabaseCheck(state, key.messageId(), processedInDatabase.contains(key.messageId()));
+            }
+        }
+
+        processed.addAll(processedInDatabase);
+        return processed;
+    }
+
+    // Chamado depois de gravar o evento. Se houver uma transação em andamento, só vale depois do commit
+    public void markProcessed(int partition, UUID messageId) {
+        markProcessed(List.of(new Key(partition, messageId)));
+    }
+
+    public void markProcessed(Collection<Key> keys) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            long bucket = retentionWindow.currentBucket();
+            keys.forEach(key -> add(key, bucket));
+            return;
+        }
+
+        List<Key> committedKeys = List.copyOf(keys);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                long bucket = retentionWindow.currentBucket();
+                committedKeys.forEach(key -> add(key, bucket));
+            }
+        });
+    }
+
+    /*
+     * Agenda o aquecimento da partição e retorna na hora (chamado na thread do consumer, durante o rebalance)
+     * Enquanto ele não termina, a partição não tem estado e as consultas vão direto ao banco
+     */
+    public synchronized void warm(int partition) {
+        if (!enabled) {
+            return;
+        }
+
+        PartitionState state = new PartitionState(lruSize);
+        warming.put(partition, state);
+        warmExecutor.execute(() -> load(partition, state));
+    }
+
+    public synchronized void release(int partition) {
+        warming.remove(partition);
+        if (partitions.remove(partition) != null) {
+            log.info("Dedup state for partition {} released", partition);
+        }
+    }
+
+    // Descarta os Bloom filters dos buckets que expiraram (ver ProcessedEventRetentionJob)
+    public void expireBucketsBefore(long oldestLiveBucket) {
+        partitions.values().forEach(state -> state.expireBucketsBefore(oldestLiveBucket));
+        warming.values().forEach(state -> state.expireBucketsBefore(oldestLiveBucket));
+    }
+
+    /*
+     * Monta o estado da partição com os messageIds dela que já estão no banco, só dos buckets ainda vivos
+     * Com o store jpa, os ids vêm em ordem de gravação, então o LRU termina com os mais recentes
+     *
+     * Se a partição for revogada (ou atribuída de novo, com outro estado) no meio da leitura, ela para e o estado é
+     *  descartado
+     */
+    private void load(int partition, PartitionState state) {
+        long start = System.currentTimeMillis();
+        long oldestLiveBucket = retentionWindow.oldestLiveBucket();
+
+        long[] loaded = { 0 };
+
+        try {
+            // O Stream do Spring Data lê o resultado aos poucos (cursor), sem carregar todos os ids em uma lista
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<ProcessedMessageId> messageIds = processedEventStore.streamMessageIds(partition, oldestLiveBucket)) {
+                    messageIds.takeWhile(ignored -> warming.get(partition) == state)
+                            .forEach(processed -> {
+                                state.add(processed.messageId(), processed.bucket());
+                                loaded[0]++;
+                            });
+                }
+            });
+        } catch (RuntimeException ex) {
+            warming.remove(partition, state);
+            log.warn("Could not warm dedup state for partition {}, its checks keep going to the store", partition, ex);
+            return;
+        }
+
+        if (promote(partition, state)) {
+            log.info("Dedup state for partition {} warmed with {} messageIds in {}ms", partition, loaded[0], System.currentTimeMillis() - start);
+        }
+    }
+
+    /*
+     * O estado entra em `partitions` antes de sair de `warming`: um markProcessed concorrente (ver add) sempre
+     *  encontra o estado em um dos dois
+     */
+    private synchronized boolean promote(int partition, PartitionState state) {
+        if (warming.get(partition) != state) {
+            return false;
+        }
+
+        partitions.put(partition, state);
+        warming.remove(partition);
+        return true;
+    }
+
+    // Procura primeiro o estado em aquecimento e depois o pronto, a ordem inversa da troca feita no promote
+    private void add(Key key, long bucket) {
+        PartitionState state = warming.get(key.partition());
+        if (state == null) {
+            state = partitions.get(key.partition());
+        }
+        if (state != null) {
+            state.add(key.messageId(), bucket);
+        }
+    }
+
+    private void countDatabaseCheck(PartitionState state, UUID messageId, boolean processed) {
+        if (processed) {
+            dbHitCounter.increment();
+            state.lru.add(messageId);
+        } else {
+            falsePositiveCounter.increment();
+        }
+    }
+
+    private Counter dedupCounter(String result) {
+        return Counter.builder("product.consumer.dedup")
+                .description("Dedup checks of consumed product events by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public record Key(int partition, UUID messageId) {
+    }
+
+    private enum Decision { PROCESSED, NEW, MAYBE }
+
+    private final class PartitionState {
+        private final LruSet lru;
+        private final ConcurrentSkipListMap<Long, BloomFilter> bloomFilters = new ConcurrentSkipListMap<>();
+
+        PartitionState(int lruSize) {
+            this.lru = new LruSet(lruSize);
+        }
+
+        Decision check(UUID messageId) {
+            if (lru.contains(messageId)) {
+                hitCounter.increment();
+                return Decision.PROCESSED;
+            }
+            for (BloomFilter bloomFilter : bloomFilters.values()) {
+                if (bloomFilter.mightContain(messageId)) {
+                    return Decision.MAYBE;
+                }
+            }
+            missCounter.increment();
+            return Decision.NEW;
+        }
+
+        void add(UUID messageId, long bucket) {
+            bloomFilters.computeIfAbsent(bucket, ignored -> newBucketFilter()).put(messageId);
+            lru.add(messageId);
+        }
+
+        void expireBucketsBefore(long oldestLiveBucket) {
+            bloomFilters.headMap(oldestLiveBucket).clear();
+        }
+
+        private BloomFilter newBucketFilter() {
+            long expectedInsertions = (long) Math.ceil(bloomExpectedEventsPerSecond * retentionWindow.bucketMs() / 1000.0);
+            return new BloomFilter(Math.max(1, expectedInsertions), bloomFalsePositiveRate / retentionWindow.liveBuckets());
+        }
+    }
+
+    // LinkedHashMap em ordem de acesso descarta o id usado há mais tempo quando passa do limite
+    private static final class LruSet {
+        private final Map<UUID, Boolean> entries;
+
+        LruSet(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized boolean contains(UUID messageId) {
+            return entries.get(messageId) != null;
+        }
+
+        synchronized void add(UUID messageId) {
+            entries.put(messageId, Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.guilherme.course.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/*
+ * Próximo offset a ser consumido de uma partição, gravado na mesma transação que os processed-events
+ *  (app.kafka.consumer.offset-store=database, ver ConsumerOffsetStore)
+ */
+@Entity
+@Table(name = "consumer-offsets")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConsumerOffsetEntity implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    @EmbeddedId
+    private ConsumerOffsetId id;
+
+    // -1 enquanto nenhum registro da partição foi gravado
+    @Column(nullable = false)
+    private Long nextOffset;
+}
@@ -0,0 +1,29 @@
+package com.guilherme.course.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+// Chave do offset gravado no banco: um por consumer group, tópico e partição
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConsumerOffsetId implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    @Column(nullable = false)
+    private String groupId;
+
+    @Column(nullable = false)
+    private String topic;
+
+    @Column(name = "kafka_partition", nullable = false)
+    private Integer partition;
+}
@@ -8,9 +8,17 @@ import lombok.NoArgsConstructor;
 
 import java.io.Serial;
 import java.io.Serializable;
+import java.time.Instant;
+import java.util.UUID;
 
 @Entity
-@Table(name = "processed-events")
+@Table(
+        name = "processed-events",
+        indexes = {
+                @Index(name = "processed_events_bucket_idx", columnList = "bucket"),
+                @Index(name = "processed_events_partition_bucket_idx", columnList = "kafka_partition, bucket")
+        }
+)
 @Data
 @Builder
 @NoArgsConstructor
@@ -19,13 +27,31 @@ public class ProcessedEventEntity implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    /*
+     * Com IDENTITY o id só existe depois do insert, então o Hibernate precisa executar um insert por vez
+     * Com SEQUENCE (e allocationSize > 1, que usa o otimizador pooled) os ids são reservados em blocos antes dos inserts,
+     *  permitindo que eles sejam enviados em batches JDBC (ver hibernate.jdbc.batch_size no application.properties)
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "processed_events_seq")
+    @SequenceGenerator(name = "processed_events_seq", sequenceName = "processed_events_seq", allocationSize = 50)
     private Long id;
 
+    // UUID é mapeado para o tipo nativo de 16 bytes do banco, deixando o índice único bem menor que com texto
     @Column(nullable = false, unique = true)
-    private String messageId;
+    private UUID messageId;
 
     @Column(nullable = false)
     private String productId;
+
+    // Partição de onde o evento foi consumido, usada para aquecer a deduplicação em memória (ver ProcessedEventDeduplicator)
+    @Column(name = "kafka_partition", nullable = false)
+    private Integer partition;
+
+    @Column(nullable = false)
+    private Instant processedAt;
+
+    // Bucket de retenção (processedAt / bucket-ms). Os eventos expirados são apagados por bucket inteiro (ver RetentionWindow)
+    @Column(nullable = false)
+    private Long bucket;
 }
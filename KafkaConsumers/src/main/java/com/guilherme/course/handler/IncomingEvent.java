@@ -0,0 +1,45 @@
+package com.guilherme.course.handler;
+
+import com.guilherme.course.dedup.ProcessedEventDeduplicator;
+import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.exceptions.NotRetryableException;
+import com.guilherme.course.util.MessageIdUtil;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+
+import java.util.UUID;
+
+// Registro de um batch já com o messageId e o payload lidos, usado pelos handlers dos modos batch e parallel
+record IncomingEvent(ConsumerRecord<String, Object> consumerRecord, UUID messageId, ProductCreatedEvent event) {
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(IncomingEvent.class);
+
+    static IncomingEvent parse(ConsumerRecord<String, Object> consumerRecord) {
+        // Com o ErrorHandlingDeserializer, um payload inválido chega como null e a exceção vem em um header
+        DeserializationException deserializationException = SerializationUtils.getExceptionFromHeader(
+                consumerRecord, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR
+        );
+        if (deserializationException != null) {
+            throw new NotRetryableException(deserializationException);
+        }
+
+        if (!(consumerRecord.value() instanceof ProductCreatedEvent productCreatedEvent)) {
+            throw new NotRetryableException("Unexpected payload type: " + consumerRecord.value());
+        }
+
+        Header messageIdHeader = consumerRecord.headers().lastHeader("messageId");
+        UUID messageId = MessageIdUtil.fromHeader(messageIdHeader != null ? messageIdHeader.value() : null);
+
+        return new IncomingEvent(consumerRecord, messageId, productCreatedEvent);
+    }
+
+    int partition() {
+        return consumerRecord.partition();
+    }
+
+    ProcessedEventDeduplicator.Key dedupKey() {
+        return new ProcessedEventDeduplicator.Key(partition(), messageId);
+    }
+}
@@ -0,0 +1,73 @@
+package com.guilherme.course.handler;
+
+import com.guilherme.course.entity.ProcessedEventEntity;
+import com.guilherme.course.exceptions.NotRetryableException;
+import com.guilherme.course.offset.ConsumerOffsetStore;
+import com.guilherme.course.service.ProductCreatedEventService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ * Gravação dos eventos processados nos modos batch e parallel
+ *
+ * Grava todos em uma única transação, com os inserts em batch JDBC. Se ela falhar por violação de unicidade (outro
+ *  consumer gravou o mesmo messageId nesse meio tempo), grava um a um para descobrir qual registro tem problema,
+ *  igual ao modo record. A falha é devolvida (e não lançada) para o handler decidir qual registro vai para o retry/DLT
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProcessedEventWriter {
+    private final ProductCreatedEventService productCreatedEventService;
+    private final TransactionTemplate transactionTemplate;
+    private final ConsumerOffsetStore consumerOffsetStore;
+
+    Optional<BatchListenerFailedException> save(List<IncomingEvent> eventsToSave) {
+        if (eventsToSave.isEmpty()) {
+            return Optional.empty();
+        }
+
+        List<ProcessedEventEntity> entities = eventsToSave.stream()
+                .map(event -> productCreatedEventService.toEntity(event.messageId(), event.partition(), event.event()))
+                .toList();
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                productCreatedEventService.saveEvents(entities);
+                consumerOffsetStore.store(lastOffsets(eventsToSave));
+            });
+            return Optional.empty();
+        } catch (DataIntegrityViolationException ex) {
+            log.warn("Batch insert failed, saving events one by one: {}", ex.getMessage());
+        }
+
+        for (IncomingEvent incomingEvent : eventsToSave) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    productCreatedEventService.saveEvent(incomingEvent.messageId(), incomingEvent.partition(), incomingEvent.event());
+                    consumerOffsetStore.store(incomingEvent.partition(), incomingEvent.consumerRecord().offset());
+                });
+            } catch (NotRetryableException | DataIntegrityViolationException ex) {
+                // A violação também pode vir do commit (ou do offset gravado junto), e não só do saveEvent
+                return Optional.of(new BatchListenerFailedException(ex.getMessage(), ex, incomingEvent.consumerRecord()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Maior offset gravado de cada partição (app.kafka.consumer.offset-store=database)
+    private static Map<Integer, Long> lastOffsets(List<IncomingEvent> events) {
+        Map<Integer, Long> lastOffsets = new HashMap<>();
+        events.forEach(event -> lastOffsets.merge(event.partition(), event.consumerRecord().offset(), Math::max));
+        return lastOffsets;
+    }
+}
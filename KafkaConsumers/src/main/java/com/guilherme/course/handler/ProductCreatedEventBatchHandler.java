@@ -0,0 +1,92 @@
+package com.guilherme.course.handler;
+
+import com.guilherme.course.service.ProductCreatedEventService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/*
+ * Modo batch (app.kafka.consumer.listener-mode=batch): recebe todos os registros de um poll de uma vez
+ *
+ * Para cada poll:
+ *  1. Lê o messageId e o payload de cada registro, em ordem
+ *  2. Descobre quais já foram processados: a maioria é resolvida em memória (ver ProcessedEventDeduplicator) e o
+ *      restante vai para uma única consulta (findByMessageIdIn)
+ *  3. Executa a regra de negócio só dos novos
+ *  4. Grava todos eles com um único saveAll, em uma transação, com os inserts em batch JDBC
+ *
+ * Falhas continuam sendo por registro: se o registro N falhar, os registros antes dele são gravados e a
+ *  BatchListenerFailedException informa ao DefaultErrorHandler qual foi o registro com problema. O error handler
+ *  commita os offsets anteriores, aplica o retry/DLT só no registro N e reentrega o restante do batch.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.kafka.consumer.listener-mode", havingValue = "batch")
+public class ProductCreatedEventBatchHandler {
+    private final ProductCreatedEventService productCreatedEventService;
+    private final ProcessedEventWriter processedEventWriter;
+
+    @KafkaListener(topics = { "product-created-events" })
+    public void handle(List<ConsumerRecord<String, Object>> records) {
+        log.info("Receiving batch of {} events", records.size());
+
+        List<IncomingEvent> incomingEvents = new ArrayList<>(records.size());
+        ConsumerRecord<String, Object> failedRecord = null;
+        RuntimeException failure = null;
+
+        // 1. Um registro inválido interrompe a leitura: ele e os seguintes não são processados nesta rodada
+        for (ConsumerRecord<String, Object> consumerRecord : records) {
+            try {
+                incomingEvents.add(IncomingEvent.parse(consumerRecord));
+            } catch (RuntimeException ex) {
+                failedRecord = consumerRecord;
+                failure = ex;
+                break;
+            }
+        }
+
+        // 2. Deduplicação do batch inteiro com no máximo uma consulta
+        Set<UUID> processedMessageIds = productCreatedEventService.findProcessedMessageIds(
+                incomingEvents.stream().map(IncomingEvent::dedupKey).toList()
+        );
+
+        // 3. Regra de negócio, na ordem do batch. O Set também descarta um messageId repetido dentro do próprio batch
+        List<IncomingEvent> eventsToSave = new ArrayList<>(incomingEvents.size());
+        for (IncomingEvent incomingEvent : incomingEvents) {
+            if (!processedMessageIds.add(incomingEvent.messageId())) {
+                productCreatedEventService.skipDuplicate(incomingEvent.messageId());
+                continue;
+            }
+
+            try {
+                productCreatedEventService.businessLogic(incomingEvent.event());
+            } catch (RuntimeException ex) {
+                failedRecord = incomingEvent.consumerRecord();
+                failure = ex;
+                break;
+            }
+            eventsToSave.add(incomingEvent);
+        }
+
+        // 4. Grava tudo o que foi processado antes da falha (se houver). Uma falha na gravação é sempre anterior a ela
+        Optional<BatchListenerFailedException> saveFailure = processedEventWriter.save(eventsToSave);
+        if (saveFailure.isPresent()) {
+            throw saveFailure.get();
+        }
+
+        if (failure != null) {
+            throw new BatchListenerFailedException(failure.getMessage(), failure, failedRecord);
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package com.guilherme.course.handler;
 
-import com.guilherme.course.entity.ProcessedEventEntity;
 import com.guilherme.course.events.ProductCreatedEvent;
-import com.guilherme.course.exceptions.NotRetryableException;
-import com.guilherme.course.exceptions.RetryableException;
-import com.guilherme.course.repository.ProcessedEventRepository;
+import com.guilherme.course.offset.ConsumerOffsetStore;
+import com.guilherme.course.service.ProductCreatedEventService;
+import com.guilherme.course.util.MessageIdUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaHandler;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.KafkaHeaders;
@@ -15,14 +14,14 @@ import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.reactive.function.client.WebClient;
 
-import java.util.Optional;
+import java.util.UUID;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
+// Modo padrão: um registro por chamada e por transação (ver ProductCreatedEventBatchHandler para o modo batch)
+@ConditionalOnProperty(name = "app.kafka.consumer.listener-mode", havingValue = "record", matchIfMissing = true)
 /*
  * @KafkaListener pode estar na classe ou no método
  *  - Se estiver no método, então o método vai receber mensagem naquele tópico e vai converter para a classe que passar como parâmetro
@@ -31,66 +30,40 @@ import java.util.Optional;
  */
 @KafkaListener(topics = { "product-created-events" })
 public class ProductCreatedEventHandler {
-    private final WebClient webClient;
-    private final ProcessedEventRepository processedEventRepository;
+    private final ProductCreatedEventService productCreatedEventService;
+    private final ConsumerOffsetStore consumerOffsetStore;
 
     @Transactional      // Faz com que o JPA trate as operações no banco de dados como transações
     @KafkaHandler
     public void handle(
             @Header(KafkaHeaders.RECEIVED_KEY) String messageKey,   // Captura a chave da mensagem recebida
-            @Header(value = "messageId") String messageId,          // Captura o header "messageId" da mensagem recebida
+            @Header(value = "messageId") byte[] messageIdHeader,    // Captura o header "messageId" da mensagem recebida (bytes crus)
+            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition, // Captura a partição de onde a mensagem foi lida
+            @Header(KafkaHeaders.OFFSET) long offset,               // Captura o offset da mensagem na partição
             @Payload ProductCreatedEvent productCreatedEvent        // Captura o payload (conteúdo) da mensagem recebida
 
             // Outra solução é passar apenas um `ConsumerRecord<KeyType, ValueType> consumerRecord` no parâmetro,
             //  dessa forma, é possível acessar todos esses campos (headers, key, value, etc) pelo `consumerRecord`
     ) {
+        UUID messageId = MessageIdUtil.fromHeader(messageIdHeader);
         log.info("Receiving new event for {}, with messageId: {}", productCreatedEvent.title(), messageId);
 
-        Optional<ProcessedEventEntity> optionalProcessedEvent = processedEventRepository.findByMessageId(messageId);
-        if (optionalProcessedEvent.isPresent()) {
-            log.warn("Message already processed. Returning.");
+        /*
+         * Com o offset gravado no banco (ver ConsumerOffsetStore), a reentrega é uma comparação em memória, sem
+         *  consulta. Um offset novo ainda pode ser um reenvio do producer (mesmo messageId, outro offset), então passa
+         *  pela deduplicação do messageId como no modo kafka
+         */
+        boolean redelivered = consumerOffsetStore.isEnabled() && consumerOffsetStore.isProcessed(partition, offset);
+        if (redelivered || productCreatedEventService.isProcessed(partition, messageId)) {
+            productCreatedEventService.skipDuplicate(messageId);
+            if (!redelivered) {
+                consumerOffsetStore.store(partition, offset);   // O reenvio descartado também avança o offset
+            }
             return;
         }
 
-        this.businessLogic(productCreatedEvent);
-        this.saveEvent(messageId, productCreatedEvent);
-    }
-
-    private void businessLogic(ProductCreatedEvent productCreatedEvent) {
-        log.info("Processing product logic with productId: {}", productCreatedEvent.productId());
-
-        try {
-            webClient.get()
-                    .uri("/response/200")
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-        } catch (ResourceAccessException ex) {
-            log.error("[RETRYABLE ERROR]: {}", ex.getMessage());
-            throw new RetryableException(ex);
-        } catch (Exception ex) {
-            log.error("[NOT RETRYABLE ERROR]: {}", ex.getMessage());
-            throw new NotRetryableException(ex);
-        }
-
-        log.info("Finishing processing product with no errors");
-    }
-
-    private void saveEvent(String messageId, ProductCreatedEvent productCreatedEvent) {
-        log.info("Trying to save event to database");
-
-        try {
-            processedEventRepository.save(
-                    ProcessedEventEntity.builder()
-                            .messageId(messageId)
-                            .productId(productCreatedEvent.productId())
-                            .build()
-            );
-        } catch (DataIntegrityViolationException ex) {
-            log.error("[NOT RETRYABLE ERROR] while saving to database: {}", ex.getMessage());
-            throw new NotRetryableException(ex);
-        }
-
-        log.info("Event successfully saved to database");
+        productCreatedEventService.businessLogic(productCreatedEvent);
+        productCreatedEventService.saveEvent(messageId, partition, productCreatedEvent);
+        consumerOffsetStore.store(partition, offset);   // Mesma transação do evento
     }
 }
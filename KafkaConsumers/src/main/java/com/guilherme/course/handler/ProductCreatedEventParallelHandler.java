@@ -0,0 +1,161 @@
+package com.guilherme.course.handler;
+
+import com.guilherme.course.service.ProductCreatedEventService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/*
+ * Modo parallel (app.kafka.consumer.listener-mode=parallel): processa em paralelo os registros de um poll
+ *
+ * Por que existe?
+ *  - No modo record, cada partição processa um registro por vez, e o businessLogic fica bloqueado na chamada remota
+ *  - Com 3 partições, o limite é 3 x (1 / latência da chamada remota), não importa quanto o serviço remoto aguente
+ *
+ * Para cada poll:
+ *  1. Lê e deduplica todos os registros de uma vez (igual ao modo batch)
+ *  2. Agrupa os registros pela chave (productId), mantendo a ordem do poll dentro de cada grupo
+ *  3. Cada grupo roda em uma virtual thread: chaves diferentes são processadas ao mesmo tempo, e os registros de uma
+ *      mesma chave continuam em ordem. O número de grupos rodando ao mesmo tempo é limitado por max-concurrency
+ *  4. Se um registro de um grupo falhar, os registros seguintes da mesma chave não são processados
+ *  5. Todos os registros processados com sucesso são gravados em uma transação
+ *  6. Se houve falha, a BatchListenerFailedException aponta o primeiro registro com falha (na ordem do poll)
+ *
+ * O DefaultErrorHandler commita os offsets só até o registro anterior ao que falhou (o maior trecho contínuo de
+ *  registros concluídos) e reentrega o restante. Os registros reentregues que já tinham sido concluídos foram
+ *  gravados no passo 5, então são descartados pela deduplicação sem executar o businessLogic de novo.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.kafka.consumer.listener-mode", havingValue = "parallel")
+public class ProductCreatedEventParallelHandler {
+    private final ProductCreatedEventService productCreatedEventService;
+    private final ProcessedEventWriter processedEventWriter;
+
+    @Value("${app.kafka.consumer.parallel.max-concurrency}")
+    private int maxConcurrency;
+
+    @KafkaListener(topics = { "product-created-events" })
+    public void handle(List<ConsumerRecord<String, Object>> records) {
+        log.info("Receiving batch of {} events to process in parallel", records.size());
+
+        // Falhas indexadas pela posição do registro no poll, para achar a primeira no final
+        Map<Integer, RuntimeException> failures = new ConcurrentHashMap<>();
+
+        // 1. Leitura de todos os registros. Um registro inválido só é marcado como falha, o restante segue
+        List<IncomingEvent> incomingEvents = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            try {
+                incomingEvents.add(IncomingEvent.parse(records.get(i)));
+            } catch (RuntimeException ex) {
+                incomingEvents.add(null);
+                failures.put(i, ex);
+            }
+        }
+
+        Set<UUID> processedMessageIds = productCreatedEventService.findProcessedMessageIds(
+                incomingEvents.stream().filter(event -> event != null).map(IncomingEvent::dedupKey).toList()
+        );
+
+        // 2. Índices dos registros agrupados pela chave, na ordem do poll
+        Map<String, List<Integer>> indexesByKey = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            indexesByKey.computeIfAbsent(records.get(i).key(), key -> new ArrayList<>()).add(i);
+        }
+
+        // 3. Um grupo por virtual thread. O close() do executor espera todas terminarem
+        Map<Integer, IncomingEvent> completed = new ConcurrentHashMap<>();
+        Semaphore permits = new Semaphore(maxConcurrency);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<Integer> indexes : indexesByKey.values()) {
+                executor.execute(() -> processInOrder(indexes, incomingEvents, processedMessageIds, completed, failures, permits));
+            }
+        }
+
+        // 5. Grava, na ordem do poll, tudo que foi concluído (inclusive o que vem depois de uma falha)
+        List<IncomingEvent> eventsToSave = completed.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(Map.Entry::getValue)
+                .toList();
+        processedEventWriter.save(eventsToSave)
+                .ifPresent(ex -> failures.put(records.indexOf(ex.getRecord()), ex));
+
+        // 6. Primeiro registro com falha, na ordem do poll
+        Optional<Map.Entry<Integer, RuntimeException>> firstFailure = failures.entrySet().stream()
+                .min(Comparator.comparingInt(Map.Entry::getKey));
+        if (firstFailure.isPresent()) {
+            RuntimeException failure = firstFailure.get().getValue();
+            if (failure instanceof BatchListenerFailedException batchListenerFailedException) {
+                throw batchListenerFailedException;
+            }
+            throw new BatchListenerFailedException(failure.getMessage(), failure, records.get(firstFailure.get().getKey()));
+        }
+    }
+
+    // 4. Processa os registros de uma chave em ordem, parando no primeiro que falhar
+    private void processInOrder(
+            List<Integer> indexes,
+            List<IncomingEvent> incomingEvents,
+            Set<UUID> processedMessageIds,
+            Map<Integer, IncomingEvent> completed,
+            Map<Integer, RuntimeException> failures,
+            Semaphore permits
+    ) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failures.put(indexes.get(0), new IllegalStateException("Interrupted while waiting to process", ex));
+            return;
+        }
+
+        // messageId repetido dentro do próprio poll (ex.: reenvio) tem a mesma chave, então cai neste mesmo grupo
+        Set<UUID> seenMessageIds = new HashSet<>();
+
+        try {
+            for (int index : indexes) {
+                IncomingEvent incomingEvent = incomingEvents.get(index);
+                if (incomingEvent == null) {    // Registro inválido: os seguintes da mesma chave ficam para a reentrega
+                    return;
+                }
+
+                // processedMessageIds só é lido aqui: ele foi montado antes das virtual threads começarem
+                if (processedMessageIds.contains(incomingEvent.messageId()) || !seenMessageIds.add(incomingEvent.messageId())) {
+                    productCreatedEventService.skipDuplicate(incomingEvent.messageId());
+                    continue;
+                }
+
+                try {
+                    productCreatedEventService.businessLogic(incomingEvent.event());
+                    completed.put(index, incomingEvent);
+                } catch (RuntimeException ex) {
+                    failures.put(index, ex);
+                    return;
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.guilherme.course.handler;
+
+import com.guilherme.course.service.ProductCreatedEventService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/*
+ * Consome os tópicos de retry do product-created-events (ver RetryTopicRouter), em qualquer modo de listener
+ *
+ * Cada tier tem o seu próprio listener (e container): um registro esperando o atraso do retry-3 não segura os
+ *  registros do retry-1, que vencem antes. A espera em si é feita pelo RetryDelayContainerCustomizer do
+ *  retryKafkaListenerContainerFactory, que pausa a partição até o horário do retry
+ *
+ * Se falhar de novo, o mesmo error handler manda o registro para o próximo tier (ou para o DLT)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductCreatedEventRetryHandler {
+    private final ProductCreatedEventService productCreatedEventService;
+
+    @Transactional
+    @KafkaListener(topics = "product-created-events-retry-1", containerFactory = "retryKafkaListenerContainerFactory")
+    public void handleRetry1(ConsumerRecord<String, Object> consumerRecord) {
+        handle(consumerRecord);
+    }
+
+    @Transactional
+    @KafkaListener(topics = "product-created-events-retry-2", containerFactory = "retryKafkaListenerContainerFactory")
+    public void handleRetry2(ConsumerRecord<String, Object> consumerRecord) {
+        handle(consumerRecord);
+    }
+
+    @Transactional
+    @KafkaListener(topics = "product-created-events-retry-3", containerFactory = "retryKafkaListenerContainerFactory")
+    public void handleRetry3(ConsumerRecord<String, Object> consumerRecord) {
+        handle(consumerRecord);
+    }
+
+    // A partição do tier é a mesma do registro original, então a deduplicação por partição continua valendo
+    private void handle(ConsumerRecord<String, Object> consumerRecord) {
+        IncomingEvent incomingEvent = IncomingEvent.parse(consumerRecord);
+        log.info("Retrying event from {} with messageId: {}", consumerRecord.topic(), incomingEvent.messageId());
+
+        if (productCreatedEventService.isProcessed(incomingEvent.partition(), incomingEvent.messageId())) {
+            productCreatedEventService.skipDuplicate(incomingEvent.messageId());
+            return;
+        }
+
+        productCreatedEventService.businessLogic(incomingEvent.event());
+        productCreatedEventService.saveEvent(incomingEvent.messageId(), incomingEvent.partition(), incomingEvent.event());
+    }
+}
@@ -0,0 +1,60 @@
+package com.guilherme.course.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/*
+ * Tempo de cada etapa do processamento de um ProductCreatedEvent, para descobrir qual delas domina quando a vazão cai
+ *
+ * Métricas:
+ *  - kafka.consumer.stage (tag stage), com histograma (percentis no /actuator/prometheus):
+ *      - deserialization -> ProductCreatedEventDeserializer (binário ou JSON)
+ *      - dedup           -> consulta de mensagem já processada (memória ou banco)
+ *      - business_logic  -> chamada remota do businessLogic
+ *      - save            -> gravação no banco (um evento ou um batch inteiro)
+ *  - kafka.consumer.duplicates.skipped: mensagens descartadas por já terem sido processadas
+ */
+@Component
+public class ListenerStageMetrics {
+    public enum Stage {
+        DESERIALIZATION,
+        DEDUP,
+        BUSINESS_LOGIC,
+        SAVE
+    }
+
+    private final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+    private final Counter duplicatesSkipped;
+
+    public ListenerStageMetrics(MeterRegistry meterRegistry) {
+        for (Stage stage : Stage.values()) {
+            timers.put(stage, Timer.builder("kafka.consumer.stage")
+                    .tag("stage", stage.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        this.duplicatesSkipped = meterRegistry.counter("kafka.consumer.duplicates.skipped");
+    }
+
+    public Timer timer(Stage stage) {
+        return timers.get(stage);
+    }
+
+    public <T> T time(Stage stage, Supplier<T> supplier) {
+        return timers.get(stage).record(supplier);
+    }
+
+    public void time(Stage stage, Runnable runnable) {
+        timers.get(stage).record(runnable);
+    }
+
+    public void duplicateSkipped() {
+        duplicatesSkipped.increment();
+    }
+}
@@ -0,0 +1,35 @@
+package com.guilherme.course.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.util.Map;
+
+// Mede o tempo de desserialização do deserializer real. Fica dentro do ErrorHandlingDeserializer, no lugar dele
+@RequiredArgsConstructor
+public class TimedDeserializer<T> implements Deserializer<T> {
+    private final Deserializer<T> delegate;
+    private final Timer timer;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        delegate.configure(configs, isKey);
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        return timer.record(() -> delegate.deserialize(topic, data));
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        return timer.record(() -> delegate.deserialize(topic, headers, data));
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,144 @@
+package com.guilherme.course.offset;
+
+import com.guilherme.course.entity.ConsumerOffsetEntity;
+import com.guilherme.course.entity.ConsumerOffsetId;
+import com.guilherme.course.repository.ConsumerOffsetRepository;
+import com.guilherme.course.util.ConstantUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offsets do product-created-events guardados no banco, na mesma transação que grava os processed-events
+ *  (app.kafka.consumer.offset-store=database).
+ *
+ * Por que existe?
+ *  - O commit do offset no Kafka e a transação do JPA não são atômicos: se o consumer cair entre os dois, o registro
+ *      é reentregue, e por isso o modo record consultava o índice único do messageId em todo registro
+ *  - Com o offset gravado junto com o evento, o banco sabe exatamente até onde cada partição foi processada
+ *
+ * Fluxo:
+ *  - Partição atribuída -> lê o offset gravado e o consumer faz seek para ele (ver OffsetSeekingRebalanceListener)
+ *  - Registro processado -> o offset avança na mesma transação do evento, e na memória depois do commit
+ *  - Registro reentregue -> uma comparação com o offset em memória da partição descarta a duplicata, sem consulta
+ *  - Offset novo -> ainda passa pela deduplicação do messageId (ver ProductCreatedEventHandler), que pega o reenvio
+ *      do producer (mesmo messageId em outro offset); o reenvio descartado também avança o offset
+ *  - Registro enviado para o retry/DLT -> o offset avança em uma transação própria (ver StoredOffsetRetryListener)
+ *
+ * O commit no Kafka continua acontecendo, mas quem decide de onde a partição continua é o banco.
+ *
+ * Não funciona com o modo parallel: ele grava registros concluídos depois de uma falha, então não existe um offset
+ *  contínuo até onde tudo foi processado.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConsumerOffsetStore {
+    private static final long NO_OFFSET = -1;
+
+    private final ConsumerOffsetRepository consumerOffsetRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.kafka.consumer.offset-store}")
+    private String offsetStore;
+
+    @Value("${app.kafka.consumer.listener-mode}")
+    private String listenerMode;
+
+    @Value("${spring.kafka.consumer.group-id}")
+    private String groupId;
+
+    // Próximo offset de cada partição atribuída, já commitado no banco
+    private final Map<Integer, Long> nextOffsets = new ConcurrentHashMap<>();
+
+    private TransactionTemplate transactionTemplate;
+    private boolean enabled;
+
+    @PostConstruct
+    void init() {
+        enabled = "database".equals(offsetStore);
+        if (enabled && "parallel".equals(listenerMode)) {
+            throw new IllegalStateException("app.kafka.consumer.offset-store=database is not supported with listener-mode=parallel");
+        }
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Cria a linha da partição na primeira vez e devolve o offset de onde ela deve continuar, se já houver um
+    public OptionalLong assign(int partition) {
+        ConsumerOffsetEntity entity = transactionTemplate.execute(status -> consumerOffsetRepository.findById(id(partition))
+                .orElseGet(() -> consumerOffsetRepository.save(new ConsumerOffsetEntity(id(partition), NO_OFFSET))));
+
+        long nextOffset = entity.getNextOffset();
+        nextOffsets.put(partition, nextOffset);
+        log.info("Stored offset for partition {}: {}", partition, nextOffset);
+
+        return nextOffset == NO_OFFSET ? OptionalLong.empty() : OptionalLong.of(nextOffset);
+    }
+
+    public void release(int partition) {
+        nextOffsets.remove(partition);
+    }
+
+    // Registro com offset antes do que já foi gravado: é uma reentrega
+    public boolean isProcessed(int partition, long offset) {
+        Long nextOffset = nextOffsets.get(partition);
+        return nextOffset != null && offset < nextOffset;
+    }
+
+    // Precisa ser chamado na transação que gravou o evento
+    public void store(int partition, long offset) {
+        store(Map.of(partition, offset));
+    }
+
+    // Último offset processado de cada partição (modo batch: um update por partição do poll)
+    public void store(Map<Integer, Long> lastOffsets) {
+        if (!enabled || lastOffsets.isEmpty()) {
+            return;
+        }
+
+        lastOffsets.forEach((partition, offset) -> consumerOffsetRepository.advance(id(partition), offset + 1));
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            lastOffsets.forEach(this::advanceInMemory);
+            return;
+        }
+
+        Map<Integer, Long> committedOffsets = Map.copyOf(lastOffsets);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                committedOffsets.forEach(ConsumerOffsetStore.this::advanceInMemory);
+            }
+        });
+    }
+
+    // Registro que saiu da partição pelo error handler, sem gravar evento: o offset avança em uma transação própria
+    public void storeRecovered(int partition, long offset) {
+        if (enabled) {
+            transactionTemplate.executeWithoutResult(status -> store(partition, offset));
+        }
+    }
+
+    private void advanceInMemory(int partition, long offset) {
+        nextOffsets.computeIfPresent(partition, (ignored, nextOffset) -> Math.max(nextOffset, offset + 1));
+    }
+
+    private ConsumerOffsetId id(int partition) {
+        return new ConsumerOffsetId(groupId, ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC, partition);
+    }
+}
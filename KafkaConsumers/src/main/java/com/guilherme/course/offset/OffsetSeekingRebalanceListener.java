@@ -0,0 +1,54 @@
+package com.guilherme.course.offset;
+
+import com.guilherme.course.dedup.ProcessedEventDedupRebalanceListener;
+import com.guilherme.course.util.ConstantUtil;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/*
+ * Rebalance listener do container principal: com app.kafka.consumer.offset-store=database, faz o seek de cada
+ *  partição atribuída para o offset gravado no banco (ver ConsumerOffsetStore), antes do primeiro poll dela
+ *
+ * O container só aceita um rebalance listener, então este repassa tudo para o ProcessedEventDedupRebalanceListener
+ */
+@Component
+@RequiredArgsConstructor
+public class OffsetSeekingRebalanceListener implements ConsumerAwareRebalanceListener {
+    private final ConsumerOffsetStore consumerOffsetStore;
+    private final ProcessedEventDedupRebalanceListener dedupRebalanceListener;
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (consumerOffsetStore.isEnabled()) {
+            partitions.stream()
+                    .filter(partition -> ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC.equals(partition.topic()))
+                    .forEach(partition -> consumerOffsetStore.assign(partition.partition())
+                            .ifPresent(offset -> consumer.seek(partition, offset)));
+        }
+
+        dedupRebalanceListener.onPartitionsAssigned(consumer, partitions);
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        release(partitions);
+        dedupRebalanceListener.onPartitionsRevokedAfterCommit(consumer, partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        release(partitions);
+        dedupRebalanceListener.onPartitionsLost(consumer, partitions);
+    }
+
+    private void release(Collection<TopicPartition> partitions) {
+        partitions.stream()
+                .filter(partition -> ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC.equals(partition.topic()))
+                .forEach(partition -> consumerOffsetStore.release(partition.partition()));
+    }
+}
@@ -0,0 +1,29 @@
+package com.guilherme.course.offset;
+
+import com.guilherme.course.util.ConstantUtil;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.RetryListener;
+import org.springframework.stereotype.Component;
+
+/*
+ * Um registro do product-created-events que foi para o retry/DLT não grava evento, então o offset dele não avança
+ *  no banco. Sem isso, depois de um rebalance o seek voltaria para ele e o registro seria roteado de novo
+ */
+@Component
+@RequiredArgsConstructor
+public class StoredOffsetRetryListener implements RetryListener {
+    private final ConsumerOffsetStore consumerOffsetStore;
+
+    @Override
+    public void failedDelivery(ConsumerRecord<?, ?> consumerRecord, Exception exception, int deliveryAttempt) {
+    }
+
+    // Chamado depois que o DeadLetterPublishingRecoverer publicou o registro
+    @Override
+    public void recovered(ConsumerRecord<?, ?> consumerRecord, Exception exception) {
+        if (ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC.equals(consumerRecord.topic())) {
+            consumerOffsetStore.storeRecovered(consumerRecord.partition(), consumerRecord.offset());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.guilherme.course.replay;
+
+import java.util.List;
+
+/*
+ * Pedido de replay de um DLT (ver DltReplayService)
+ *
+ * - topic: o DLT, ex.: product-created-events-dlt
+ * - partitions: partições do DLT a reprocessar (vazio = todas)
+ * - fromOffset/toOffset: intervalo de offsets, inclusivo, aplicado em cada partição
+ * - fromTimestamp/toTimestamp: intervalo por horário (epoch ms), no lugar dos offsets
+ * - exceptionClass: só os registros cuja exceção (ou causa) contém esse nome, ex.: RetryableException
+ * - exceptionMessage: só os registros cuja mensagem de exceção contém esse texto
+ * - parallelism: quantos consumers leem o DLT ao mesmo tempo (cada um com um grupo de partições)
+ * - recordsPerSecond: limite de republicações por segundo, somando todos os consumers
+ */
+public record DltReplayCommand(
+        String topic,
+        List<Integer> partitions,
+        Long fromOffset,
+        Long toOffset,
+        Long fromTimestamp,
+        Long toTimestamp,
+        String exceptionClass,
+        String exceptionMessage,
+        Integer parallelism,
+        Double recordsPerSecond
+) {
+}
@@ -0,0 +1,64 @@
+package com.guilherme.course.replay;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Estado de um replay em andamento, atualizado pelos consumers do DltReplayService e lido pelo controller
+@Getter
+public class DltReplayJob {
+    public enum State { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private final UUID id = UUID.randomUUID();
+    private final DltReplayCommand command;
+    private final Instant startedAt = Instant.now();
+
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong filtered = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile long total;
+    private volatile State state = State.RUNNING;
+    private volatile boolean cancelRequested;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    DltReplayJob(DltReplayCommand command) {
+        this.command = command;
+    }
+
+    void setTotal(long total) {
+        this.total = total;
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    void finish(State state, String error) {
+        this.state = state;
+        this.error = error;
+        this.finishedAt = Instant.now();
+    }
+
+    public DltReplayProgress progress() {
+        long done = scanned.get();
+        return new DltReplayProgress(
+                id,
+                command.topic(),
+                state,
+                total,
+                done,
+                filtered.get(),
+                replayed.get(),
+                failed.get(),
+                total > 0 ? Math.min(100.0, done * 100.0 / total) : (state == State.RUNNING ? 0.0 : 100.0),
+                startedAt,
+                finishedAt,
+                error
+        );
+    }
+}
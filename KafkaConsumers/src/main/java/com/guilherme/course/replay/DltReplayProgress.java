@@ -0,0 +1,21 @@
+package com.guilherme.course.replay;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// Foto do andamento de um replay: total = registros no intervalo, scanned = lidos, filtered = descartados pelo filtro
+public record DltReplayProgress(
+        UUID id,
+        String topic,
+        DltReplayJob.State state,
+        long total,
+        long scanned,
+        long filtered,
+        long replayed,
+        long failed,
+        double percent,
+        Instant startedAt,
+        Instant finishedAt,
+        String error
+) {
+}
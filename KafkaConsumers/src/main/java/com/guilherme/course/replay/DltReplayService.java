@@ -0,0 +1,359 @@
+package com.guilherme.course.replay;
+
+import com.guilherme.course.kafka.retry.RetryTopicRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replay de um DLT: republica no tópico original os registros que o DeadLetterPublishingRecoverer mandou para o
+ *  <topico>-dlt, depois que a causa do incidente foi resolvida.
+ *
+ * Fluxo de um replay (roda em background, o andamento fica em DltReplayJob):
+ *  1. Resolve o intervalo de cada partição do DLT (por offset, por horário ou tudo). O fim é fixado no início do
+ *      replay, então os registros que caírem no DLT durante o replay não entram (sem loop)
+ *  2. Divide as partições entre `parallelism` consumers, cada um com assign/seek (sem consumer group e sem commit)
+ *  3. Cada registro passa pelo filtro dos headers de exceção que o recoverer adiciona (kafka_dlt-exception-*)
+ *  4. Os que passam esperam um token do TokenBucket, compartilhado por todos os consumers, e são republicados
+ *
+ * A chave e o valor são republicados byte a byte (ByteArraySerializer), no tópico original: o nome do DLT sem o
+ *  -dlt. O header kafka_dlt-original-topic não serve, porque guarda o último tópico por onde o registro passou, e um
+ *  registro que esgotou os tiers chega no DLT vindo do <topico>-retry-3.
+ *  Os headers do DLT e do retry (retry-attempt, retry-due-at) são removidos: o registro volta como se fosse novo,
+ *  e o messageId é mantido, então a deduplicação continua valendo.
+ *
+ * Métrica: kafka.dlt.replayed (tag topic)
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DltReplayService {
+    private static final String DLT_SUFFIX = "-dlt";
+    private static final String DLT_HEADER_PREFIX = "kafka_dlt-";
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.kafka.replay.default-records-per-second}")
+    private double defaultRecordsPerSecond;
+
+    @Value("${app.kafka.replay.max-parallelism}")
+    private int maxParallelism;
+
+    private final Map<UUID, DltReplayJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public DltReplayJob start(DltReplayCommand command) {
+        validate(command);
+
+        DltReplayJob job = new DltReplayJob(command);
+        jobs.put(job.getId(), job);
+        executor.execute(() -> run(job));
+
+        log.info("DLT replay {} started for {}", job.getId(), command.topic());
+        return job;
+    }
+
+    public Optional<DltReplayJob> find(UUID id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public Collection<DltReplayJob> findAll() {
+        return jobs.values();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobs.values().forEach(DltReplayJob::cancel);
+        executor.shutdownNow();
+    }
+
+    private void validate(DltReplayCommand command) {
+        if (command.topic() == null || !command.topic().endsWith(DLT_SUFFIX)) {
+            throw new IllegalArgumentException("topic must be a dead letter topic (<topic>" + DLT_SUFFIX + ")");
+        }
+        if ((command.fromOffset() != null || command.toOffset() != null)
+                && (command.fromTimestamp() != null || command.toTimestamp() != null)) {
+            throw new IllegalArgumentException("Use either an offset range or a timestamp range, not both");
+        }
+        if (command.parallelism() != null && command.parallelism() < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        if (command.recordsPerSecond() != null && command.recordsPerSecond() <= 0) {
+            throw new IllegalArgumentException("recordsPerSecond must be positive");
+        }
+    }
+
+    private void run(DltReplayJob job) {
+        DltReplayCommand command = job.getCommand();
+        TokenBucket tokenBucket = new TokenBucket(
+                command.recordsPerSecond() != null ? command.recordsPerSecond() : defaultRecordsPerSecond
+        );
+        Counter replayedCounter = meterRegistry.counter("kafka.dlt.replayed", "topic", command.topic());
+
+        try (Producer<byte[], byte[]> producer = newProducer()) {
+            Map<TopicPartition, Long> startOffsets = new HashMap<>();
+            Map<TopicPartition, Long> endOffsets = new HashMap<>();
+            try (Consumer<byte[], byte[]> consumer = newConsumer()) {
+                resolveRanges(consumer, command, startOffsets, endOffsets);
+            }
+            job.setTotal(startOffsets.keySet().stream()
+                    .mapToLong(partition -> endOffsets.get(partition) - startOffsets.get(partition))
+                    .sum());
+
+            // Partições distribuídas entre os consumers, em round-robin
+            List<TopicPartition> partitions = new ArrayList<>(startOffsets.keySet());
+            int requested = command.parallelism() != null ? command.parallelism() : 1;
+            int parallelism = Math.max(1, Math.min(Math.min(requested, maxParallelism), partitions.size()));
+            List<List<TopicPartition>> groups = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                groups.add(new ArrayList<>());
+            }
+            for (int i = 0; i < partitions.size(); i++) {
+                groups.get(i % parallelism).add(partitions.get(i));
+            }
+
+            List<Future<?>> workers = new ArrayList<>();
+            try (ExecutorService workerExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (List<TopicPartition> group : groups) {
+                    workers.add(workerExecutor.submit(() -> {
+                        replay(job, group, startOffsets, endOffsets, producer, tokenBucket, replayedCounter);
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+
+            producer.flush();
+            job.finish(job.isCancelRequested() ? DltReplayJob.State.CANCELLED : DltReplayJob.State.COMPLETED, null);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            job.finish(DltReplayJob.State.CANCELLED, "Interrupted");
+        } catch (ExecutionException | RuntimeException ex) {
+            Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+            log.error("DLT replay {} failed: {}", job.getId(), cause.getMessage(), cause);
+            job.finish(DltReplayJob.State.FAILED, cause.getMessage());
+        }
+
+        log.info("DLT replay {} finished: {}", job.getId(), job.progress());
+    }
+
+    // Intervalo [início, fim) de cada partição, com o fim fixado agora
+    private void resolveRanges(
+            Consumer<byte[], byte[]> consumer,
+            DltReplayCommand command,
+            Map<TopicPartition, Long> startOffsets,
+            Map<TopicPartition, Long> endOffsets
+    ) {
+        List<TopicPartition> partitions = consumer.partitionsFor(command.topic()).stream()
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .filter(partition -> command.partitions() == null || command.partitions().isEmpty()
+                        || command.partitions().contains(partition.partition()))
+                .toList();
+
+        Map<TopicPartition, Long> beginning = consumer.beginningOffsets(partitions);
+        Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+        Map<TopicPartition, OffsetAndTimestamp> fromTimes = offsetsForTime(consumer, partitions, command.fromTimestamp());
+        Map<TopicPartition, OffsetAndTimestamp> toTimes = offsetsForTime(consumer, partitions, command.toTimestamp());
+
+        for (TopicPartition partition : partitions) {
+            long start = beginning.get(partition);
+            long stop = end.get(partition);
+
+            if (command.fromOffset() != null) {
+                start = Math.max(start, command.fromOffset());
+            }
+            if (command.toOffset() != null) {
+                stop = Math.min(stop, command.toOffset() + 1);
+            }
+            if (command.fromTimestamp() != null) {  // Sem registro a partir do horário: nada para reprocessar
+                OffsetAndTimestamp from = fromTimes.get(partition);
+                start = from != null ? from.offset() : stop;
+            }
+            if (command.toTimestamp() != null) {
+                OffsetAndTimestamp to = toTimes.get(partition);
+                stop = to != null ? Math.min(stop, to.offset()) : stop;
+            }
+
+            startOffsets.put(partition, start);
+            endOffsets.put(partition, Math.max(start, stop));
+        }
+    }
+
+    private static Map<TopicPartition, OffsetAndTimestamp> offsetsForTime(
+            Consumer<byte[], byte[]> consumer,
+            List<TopicPartition> partitions,
+            Long timestamp
+    ) {
+        if (timestamp == null) {
+            return Map.of();
+        }
+
+        Map<TopicPartition, Long> query = new HashMap<>();
+        partitions.forEach(partition -> query.put(partition, timestamp));
+        return consumer.offsetsForTimes(query);
+    }
+
+    private void replay(
+            DltReplayJob job,
+            List<TopicPartition> partitions,
+            Map<TopicPartition, Long> startOffsets,
+            Map<TopicPartition, Long> endOffsets,
+            Producer<byte[], byte[]> producer,
+            TokenBucket tokenBucket,
+            Counter replayedCounter
+    ) throws InterruptedException {
+        try (Consumer<byte[], byte[]> consumer = newConsumer()) {
+            consumer.assign(partitions);
+
+            Set<TopicPartition> remaining = new HashSet<>();
+            for (TopicPartition partition : partitions) {
+                consumer.seek(partition, startOffsets.get(partition));
+                if (startOffsets.get(partition) < endOffsets.get(partition)) {
+                    remaining.add(partition);
+                }
+            }
+            consumer.pause(partitions.stream().filter(partition -> !remaining.contains(partition)).toList());
+
+            while (!remaining.isEmpty() && !job.isCancelRequested()) {
+                ConsumerRecords<byte[], byte[]> records = consumer.poll(POLL_TIMEOUT);
+
+                for (TopicPartition partition : records.partitions()) {
+                    long end = endOffsets.get(partition);
+                    for (ConsumerRecord<byte[], byte[]> consumerRecord : records.records(partition)) {
+                        if (consumerRecord.offset() >= end || job.isCancelRequested()) {
+                            break;
+                        }
+
+                        job.getScanned().incrementAndGet();
+                        if (!matches(job.getCommand(), consumerRecord)) {
+                            job.getFiltered().incrementAndGet();
+                            continue;
+                        }
+
+                        tokenBucket.acquire();
+                        producer.send(toOriginalTopic(consumerRecord), (metadata, exception) -> {
+                            if (exception != null) {
+                                job.getFailed().incrementAndGet();
+                                log.error("Failed to replay {}-{}@{}: {}", consumerRecord.topic(), consumerRecord.partition(),
+                                        consumerRecord.offset(), exception.getMessage());
+                            } else {
+                                job.getReplayed().incrementAndGet();
+                                replayedCounter.increment();
+                            }
+                        });
+                    }
+                }
+
+                // Partição que chegou ao fim do intervalo: para de buscar registros dela
+                List<TopicPartition> finished = remaining.stream()
+                        .filter(partition -> consumer.position(partition) >= endOffsets.get(partition))
+                        .toList();
+                if (!finished.isEmpty()) {
+                    finished.forEach(remaining::remove);
+                    consumer.pause(finished);
+                }
+            }
+        }
+    }
+
+    // Filtros pelos headers de exceção (o último header é o da falha mais recente)
+    private static boolean matches(DltReplayCommand command, ConsumerRecord<byte[], byte[]> consumerRecord) {
+        if (command.exceptionClass() != null) {
+            String exceptionClass = header(consumerRecord, KafkaHeaders.DLT_EXCEPTION_FQCN);
+            String causeClass = header(consumerRecord, KafkaHeaders.DLT_EXCEPTION_CAUSE_FQCN);
+            if (!contains(exceptionClass, command.exceptionClass()) && !contains(causeClass, command.exceptionClass())) {
+                return false;
+            }
+        }
+        return command.exceptionMessage() == null
+                || contains(header(consumerRecord, KafkaHeaders.DLT_EXCEPTION_MESSAGE), command.exceptionMessage());
+    }
+
+    // O RetryTopicRouter manda para o <topico>-dlt tanto do tópico principal quanto de qualquer tier de retry
+    static ProducerRecord<byte[], byte[]> toOriginalTopic(ConsumerRecord<byte[], byte[]> consumerRecord) {
+        String dltTopic = consumerRecord.topic();
+        String originalTopic = RetryTopicRouter.baseTopic(dltTopic.substring(0, dltTopic.length() - DLT_SUFFIX.length()));
+
+        RecordHeaders headers = new RecordHeaders();
+        for (Header header : consumerRecord.headers()) {
+            if (!header.key().startsWith(DLT_HEADER_PREFIX)
+                    && !RetryTopicRouter.RETRY_ATTEMPT_HEADER.equals(header.key())
+                    && !RetryTopicRouter.RETRY_DUE_AT_HEADER.equals(header.key())) {
+                headers.add(header);
+            }
+        }
+
+        // Sem partição: o partitioner escolhe pela chave, igual ao envio original
+        return new ProducerRecord<>(originalTopic, null, consumerRecord.key(), consumerRecord.value(), headers);
+    }
+
+    private static String header(ConsumerRecord<byte[], byte[]> consumerRecord, String name) {
+        Header header = consumerRecord.headers().lastHeader(name);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    private static boolean contains(String value, String expected) {
+        return value != null && value.contains(expected);
+    }
+
+    // Consumer sem grupo: as partições são atribuídas com assign e nada é commitado
+    private Consumer<byte[], byte[]> newConsumer() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, environment.getProperty("spring.kafka.consumer.bootstrap-servers"));
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1000);
+        return new KafkaConsumer<>(config, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+    }
+
+    // Producer próprio do replay, com os bytes originais, idempotente e com pequenos batches
+    private Producer<byte[], byte[]> newProducer() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, environment.getProperty("spring.kafka.consumer.bootstrap-servers"));
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        return new KafkaProducer<>(config, new ByteArraySerializer(), new ByteArraySerializer());
+    }
+}
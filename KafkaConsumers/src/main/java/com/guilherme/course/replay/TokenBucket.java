@@ -0,0 +1,44 @@
+package com.guilherme.course.replay;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Token bucket compartilhado pelos consumers de um replay: no máximo `permitsPerSecond` republicações por segundo,
+ *  com uma rajada de até um segundo de tokens
+ *
+ * Cada acquire reserva o seu token na hora (o saldo pode ficar negativo) e dorme fora do lock até ele existir,
+ *  então várias threads esperando não disputam o lock
+ */
+final class TokenBucket {
+    private final double permitsPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("recordsPerSecond must be positive");
+        }
+
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, permitsPerSecond);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+            lastRefill = now;
+
+            tokens -= 1;
+            if (tokens >= 0) {
+                return;
+            }
+            waitNanos = (long) (-tokens / permitsPerNano);
+        }
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+}
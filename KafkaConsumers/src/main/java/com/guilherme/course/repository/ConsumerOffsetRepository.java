@@ -0,0 +1,20 @@
+package com.guilherme.course.repository;
+
+import com.guilherme.course.entity.ConsumerOffsetEntity;
+import com.guilherme.course.entity.ConsumerOffsetId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ConsumerOffsetRepository extends JpaRepository<ConsumerOffsetEntity, ConsumerOffsetId> {
+    /*
+     * Um único update, sem o select do save(): a linha da partição já foi criada quando ela foi atribuída
+     * O offset nunca volta (ex.: um registro recuperado pelo error handler depois de outros já gravados)
+     */
+    @Modifying
+    @Query("update ConsumerOffsetEntity o set o.nextOffset = :nextOffset where o.id = :id and o.nextOffset < :nextOffset")
+    int advance(@Param("id") ConsumerOffsetId id, @Param("nextOffset") long nextOffset);
+}
@@ -1,12 +1,47 @@
 package com.guilherme.course.repository;
 
 import com.guilherme.course.entity.ProcessedEventEntity;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface ProcessedEventRepository extends JpaRepository<ProcessedEventEntity, Long> {
-    Optional<ProcessedEventEntity> findByMessageId(String messageId);
+    Optional<ProcessedEventEntity> findByMessageId(UUID messageId);
+
+    // Deduplicação de um batch inteiro em uma única consulta (where message_id in (...))
+    List<ProcessedEventEntity> findByMessageIdIn(Collection<UUID> messageIds);
+
+    // Usado para aquecer a deduplicação em memória de uma partição. Precisa ser chamado dentro de uma transação
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("""
+            select new com.guilherme.course.repository.ProcessedMessageId(p.messageId, p.bucket)
+            from ProcessedEventEntity p
+            where p.partition = :partition and p.bucket >= :oldestBucket
+            order by p.id
+            """)
+    Stream<ProcessedMessageId> streamMessageIdsByPartition(
+            @Param("partition") int partition,
+            @Param("oldestBucket") long oldestBucket
+    );
+
+    // Buckets de retenção com eventos, anteriores ao bucket informado (ver ProcessedEventRetentionJob)
+    @Query("select distinct p.bucket from ProcessedEventEntity p where p.bucket < :bucket order by p.bucket")
+    List<Long> findBucketsBefore(@Param("bucket") long bucket);
+
+    // Ids de um pedaço do bucket, apagados depois com deleteAllByIdInBatch (o JPQL não tem delete com limite)
+    @Query("select p.id from ProcessedEventEntity p where p.bucket = :bucket")
+    List<Long> findIdsByBucket(@Param("bucket") long bucket, Limit limit);
 }
@@ -0,0 +1,7 @@
+package com.guilherme.course.repository;
+
+import java.util.UUID;
+
+// messageId de um evento gravado e o seu bucket de retenção, usado no aquecimento da deduplicação
+public record ProcessedMessageId(UUID messageId, long bucket) {
+}
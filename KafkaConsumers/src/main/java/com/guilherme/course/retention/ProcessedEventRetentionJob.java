@@ -0,0 +1,48 @@
+package com.guilherme.course.retention;
+
+import com.guilherme.course.dedup.ProcessedEventDeduplicator;
+import com.guilherme.course.store.ProcessedEventStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/*
+ * Apaga em segundo plano os buckets expirados do ProcessedEventStore (ver RetentionWindow)
+ *
+ * Por que existe?
+ *  - Sem retenção, a tabela e o índice único do messageId crescem para sempre, e com eles o custo das consultas de
+ *      deduplicação e do aquecimento das partições
+ *  - A deduplicação só precisa cobrir a janela em que uma mensagem pode ser reentregue ou reenviada
+ *
+ * Cada store descarta os buckets do seu jeito: o mapped (padrão) reescreve o índice sem os eventos expirados e troca
+ *  o arquivo (ver MappedProcessedEventStore); o jpa só consegue apagar as linhas de cada bucket, em pedaços limitados
+ *  (ver JpaProcessedEventStore)
+ *
+ * Métrica: product.consumer.dedup.purged (quantidade de eventos apagados)
+ */
+@Component
+@RequiredArgsConstructor
+public class ProcessedEventRetentionJob {
+    private final ProcessedEventStore processedEventStore;
+    private final ProcessedEventDeduplicator processedEventDeduplicator;
+    private final RetentionWindow retentionWindow;
+    private final MeterRegistry meterRegistry;
+
+    private Counter purgedCounter;
+
+    @PostConstruct
+    void init() {
+        purgedCounter = meterRegistry.counter("product.consumer.dedup.purged");
+    }
+
+    @Scheduled(fixedDelayString = "${app.kafka.consumer.dedup.purge-interval-ms}")
+    public void purge() {
+        long oldestLiveBucket = retentionWindow.oldestLiveBucket();
+
+        processedEventDeduplicator.expireBucketsBefore(oldestLiveBucket);
+        purgedCounter.increment(processedEventStore.deleteBucketsBefore(oldestLiveBucket));
+    }
+}
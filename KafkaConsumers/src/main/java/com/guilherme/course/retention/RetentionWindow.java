@@ -0,0 +1,44 @@
+package com.guilherme.course.retention;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/*
+ * Janela de retenção da deduplicação, dividida em buckets de tempo de `bucket-ms`
+ *
+ * Cada evento gravado pertence ao bucket processedAt / bucket-ms. Um bucket expira quando todo o seu intervalo fica
+ *  mais velho que `retention-ms`: a partir daí ele é descartado no ProcessedEventStore (ProcessedEventRetentionJob) e
+ *  na memória (Bloom filters do ProcessedEventDeduplicator)
+ */
+@Component
+public class RetentionWindow {
+    @Value("${app.kafka.consumer.dedup.retention-ms}")
+    private long retentionMs;
+
+    @Value("${app.kafka.consumer.dedup.bucket-ms}")
+    private long bucketMs;
+
+    public long bucketMs() {
+        return bucketMs;
+    }
+
+    public long bucketOf(Instant instant) {
+        return instant.toEpochMilli() / bucketMs;
+    }
+
+    public long currentBucket() {
+        return System.currentTimeMillis() / bucketMs;
+    }
+
+    // Bucket que contém o início da janela. Ele ainda tem eventos dentro da janela, então só os anteriores expiram
+    public long oldestLiveBucket() {
+        return (System.currentTimeMillis() - retentionMs) / bucketMs;
+    }
+
+    // Quantidade máxima de buckets vivos ao mesmo tempo
+    public int liveBuckets() {
+        return (int) (retentionMs / bucketMs) + 2;
+    }
+}
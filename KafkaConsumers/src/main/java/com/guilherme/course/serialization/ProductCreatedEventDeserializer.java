@@ -0,0 +1,105 @@
+package com.guilherme.course.serialization;
+
+import com.guilherme.course.events.ProductCreatedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Deserializer do ProductCreatedEvent que entende os dois formatos que o KafkaProducers pode enviar:
+ *  - Binário -> primeiro byte é a versão do formato (ver ProductCreatedEventSerializer no KafkaProducers)
+ *  - JSON    -> qualquer outro primeiro byte. É repassado para o deserializer JSON: o JsonDeserializer, como era feito
+ *              antes, ou o TopicBoundJsonDeserializer (ver app.kafka.consumer.deserializer)
+ *
+ * Continua sendo usado dentro do ErrorHandlingDeserializer, então um payload inválido (versão desconhecida ou bytes
+ * truncados) lança SerializationException e a mensagem segue para o DLT.
+ */
+public class ProductCreatedEventDeserializer implements Deserializer<Object> {
+    public static final byte FORMAT_VERSION = 1;
+
+    private static final int NULL_LENGTH = -1;
+
+    private final Deserializer<Object> jsonDeserializer;
+
+    public ProductCreatedEventDeserializer() {
+        this(new JsonDeserializer<>());
+    }
+
+    public ProductCreatedEventDeserializer(Deserializer<Object> jsonDeserializer) {
+        this.jsonDeserializer = jsonDeserializer;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonDeserializer.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        if (isBinary(data)) {
+            return decode(data);
+        }
+        return jsonDeserializer.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (isBinary(data)) {
+            return decode(data);
+        }
+        return jsonDeserializer.deserialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+
+    private static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == FORMAT_VERSION;
+    }
+
+    private static ProductCreatedEvent decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.get(); // versão
+
+        try {
+            String productId = getString(buffer);
+            String title = getString(buffer);
+
+            BigDecimal price = null;
+            int unscaledLength = buffer.getInt();
+            if (unscaledLength != NULL_LENGTH) {
+                BigInteger unscaled = new BigInteger(data, buffer.position(), unscaledLength);
+                buffer.position(buffer.position() + unscaledLength);
+                price = new BigDecimal(unscaled, buffer.getInt());
+            }
+
+            Integer quantity = buffer.get() == 0 ? null : buffer.getInt();
+
+            return new ProductCreatedEvent(productId, title, price, quantity);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new SerializationException("Malformed binary ProductCreatedEvent", ex);
+        }
+    }
+
+    // Cria a String direto a partir do array recebido, sem cópia intermediária
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
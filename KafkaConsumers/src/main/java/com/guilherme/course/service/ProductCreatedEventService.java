@@ -0,0 +1,147 @@
+package com.guilherme.course.service;
+
+import com.guilherme.course.circuitbreaker.RemoteServiceCircuitBreaker;
+import com.guilherme.course.client.CoalescingRemoteClient;
+import com.guilherme.course.dedup.ProcessedEventDeduplicator;
+import com.guilherme.course.entity.ProcessedEventEntity;
+import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.exceptions.NotRetryableException;
+import com.guilherme.course.exceptions.RetryableException;
+import com.guilherme.course.metrics.ListenerStageMetrics;
+import com.guilherme.course.metrics.ListenerStageMetrics.Stage;
+import com.guilherme.course.retention.RetentionWindow;
+import com.guilherme.course.store.ProcessedEventStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/*
+ * Regra de negócio e persistência do ProductCreatedEvent, compartilhadas pelos handlers de cada modo de listener
+ *  (ver app.kafka.consumer.listener-mode)
+ *
+ * O tempo de cada etapa (dedup, business_logic e save) é medido aqui, então vale para todos os modos
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductCreatedEventService {
+    private final WebClient webClient;
+    private final ProcessedEventStore processedEventStore;
+    private final ProcessedEventDeduplicator processedEventDeduplicator;
+    private final ListenerStageMetrics listenerStageMetrics;
+    private final RemoteServiceCircuitBreaker remoteServiceCircuitBreaker;
+    private final CoalescingRemoteClient coalescingRemoteClient;
+    private final RetentionWindow retentionWindow;
+
+    // true: a chamada remota vai em batch com as chamadas concorrentes (ver CoalescingRemoteClient)
+    @Value("${app.remote.batch.enabled}")
+    private boolean batchRemoteCalls;
+
+    // Na maioria das vezes é respondido em memória; o banco só é consultado quando o Bloom filter não tem certeza
+    public boolean isProcessed(int partition, UUID messageId) {
+        return listenerStageMetrics.time(Stage.DEDUP, () -> processedEventDeduplicator.isProcessed(partition, messageId));
+    }
+
+    // Deduplica todos os registros de um poll, com no máximo uma consulta ao banco
+    public Set<UUID> findProcessedMessageIds(Collection<ProcessedEventDeduplicator.Key> keys) {
+        return listenerStageMetrics.time(Stage.DEDUP, () -> processedEventDeduplicator.findProcessed(keys));
+    }
+
+    public void skipDuplicate(UUID messageId) {
+        log.warn("Message {} already processed. Skipping.", messageId);
+        listenerStageMetrics.duplicateSkipped();
+    }
+
+    public void businessLogic(ProductCreatedEvent productCreatedEvent) {
+        listenerStageMetrics.time(Stage.BUSINESS_LOGIC, () ->
+                remoteServiceCircuitBreaker.execute(() -> callRemoteService(productCreatedEvent)));
+    }
+
+    private void callRemoteService(ProductCreatedEvent productCreatedEvent) {
+        log.info("Processing product logic with productId: {}", productCreatedEvent.productId());
+
+        if (batchRemoteCalls) {     // Já lança RetryableException/NotRetryableException
+            coalescingRemoteClient.call(productCreatedEvent.productId());
+            log.info("Finishing processing product with no errors");
+            return;
+        }
+
+        try {
+            webClient.get()
+                    .uri("/response/200")
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block();
+        } catch (ResourceAccessException | WebClientRequestException ex) {  // Sem resposta: conexão recusada, timeout...
+            log.error("[RETRYABLE ERROR]: {}", ex.getMessage());
+            throw new RetryableException(ex);
+        } catch (WebClientResponseException ex) {
+            if (ex.getStatusCode().is5xxServerError()) {    // Serviço com problema, pode funcionar mais tarde
+                log.error("[RETRYABLE ERROR]: {}", ex.getMessage());
+                throw new RetryableException(ex);
+            }
+            log.error("[NOT RETRYABLE ERROR]: {}", ex.getMessage());
+            throw new NotRetryableException(ex);
+        } catch (Exception ex) {
+            log.error("[NOT RETRYABLE ERROR]: {}", ex.getMessage());
+            throw new NotRetryableException(ex);
+        }
+
+        log.info("Finishing processing product with no errors");
+    }
+
+    public void saveEvent(UUID messageId, int partition, ProductCreatedEvent productCreatedEvent) {
+        listenerStageMetrics.time(Stage.SAVE, () -> save(messageId, partition, productCreatedEvent));
+    }
+
+    private void save(UUID messageId, int partition, ProductCreatedEvent productCreatedEvent) {
+        log.info("Trying to save event to database");
+
+        try {
+            processedEventStore.save(toEntity(messageId, partition, productCreatedEvent));
+            processedEventDeduplicator.markProcessed(partition, messageId);
+        } catch (DataIntegrityViolationException ex) {
+            log.error("[NOT RETRYABLE ERROR] while saving to database: {}", ex.getMessage());
+            throw new NotRetryableException(ex);
+        }
+
+        log.info("Event successfully saved to database");
+    }
+
+    /*
+     * Grava vários eventos de uma vez. No store jpa, com o id gerado por sequence (ver ProcessedEventEntity) e o
+     *  hibernate.jdbc.batch_size, o Hibernate manda os inserts em batches JDBC ao invés de um por vez
+     *
+     * Uma violação de unicidade aparece nesta chamada, e não só no commit
+     */
+    public void saveEvents(List<ProcessedEventEntity> entities) {
+        listenerStageMetrics.time(Stage.SAVE, () -> processedEventStore.saveAll(entities));
+        processedEventDeduplicator.markProcessed(entities.stream()
+                .map(entity -> new ProcessedEventDeduplicator.Key(entity.getPartition(), entity.getMessageId()))
+                .toList());
+        log.info("{} events successfully saved to database", entities.size());
+    }
+
+    public ProcessedEventEntity toEntity(UUID messageId, int partition, ProductCreatedEvent productCreatedEvent) {
+        Instant processedAt = Instant.now();
+        return ProcessedEventEntity.builder()
+                .messageId(messageId)
+                .productId(productCreatedEvent.productId())
+                .partition(partition)
+                .processedAt(processedAt)
+                .bucket(retentionWindow.bucketOf(processedAt))
+                .build();
+    }
+}
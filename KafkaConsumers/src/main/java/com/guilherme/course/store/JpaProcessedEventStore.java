@@ -0,0 +1,107 @@
+package com.guilherme.course.store;
+
+import com.guilherme.course.entity.ProcessedEventEntity;
+import com.guilherme.course.repository.ProcessedEventRepository;
+import com.guilherme.course.repository.ProcessedMessageId;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// Store padrão: a tabela processed-events, com o índice único do messageId barrando a gravação em dobro
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.kafka.consumer.store.type", havingValue = "jpa", matchIfMissing = true)
+public class JpaProcessedEventStore implements ProcessedEventStore {
+    private final ProcessedEventRepository processedEventRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.kafka.consumer.dedup.purge-chunk-size}")
+    private int purgeChunkSize;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public boolean contains(UUID messageId) {
+        return processedEventRepository.findByMessageId(messageId).isPresent();
+    }
+
+    @Override
+    public Set<UUID> findExisting(Collection<UUID> messageIds) {
+        Set<UUID> existing = new HashSet<>();
+        processedEventRepository.findByMessageIdIn(messageIds).forEach(entity -> existing.add(entity.getMessageId()));
+        return existing;
+    }
+
+    /*
+     * O flush é feito aqui dentro para que uma violação de unicidade apareça nesta chamada, e não só no commit: com o id
+     *  por SEQUENCE, o save sozinho adia o insert até o fim da transação
+     */
+    @Override
+    public void save(ProcessedEventEntity entity) {
+        processedEventRepository.saveAndFlush(entity);
+    }
+
+    @Override
+    public void saveAll(List<ProcessedEventEntity> entities) {
+        processedEventRepository.saveAllAndFlush(entities);
+    }
+
+    // Precisa ser chamado dentro de uma transação (o Stream lê o resultado aos poucos, com um cursor)
+    @Override
+    public Stream<ProcessedMessageId> streamMessageIds(int partition, long oldestBucket) {
+        return processedEventRepository.streamMessageIdsByPartition(partition, oldestBucket);
+    }
+
+    /*
+     * Cada bucket expirado é apagado em pedaços de `purge-chunk-size` linhas: os ids do pedaço são lidos pela coluna
+     *  bucket (indexada) e apagados com um único delete por id, cada pedaço na sua própria transação curta
+     *
+     * É um delete de linhas (com o custo de índice e de log de cada uma), não o descarte do bucket inteiro: o H2 não
+     *  tem tabelas particionadas para um DROP por bucket. Os pedaços só limitam o tamanho de cada transação e o tempo
+     *  em que os locks disputam com os inserts do listener. Por isso o store padrão é o mapped
+     */
+    @Override
+    public long deleteBucketsBefore(long oldestBucket) {
+        long total = 0;
+        for (Long bucket : processedEventRepository.findBucketsBefore(oldestBucket)) {
+            long deletedFromBucket = 0;
+            int deleted;
+            do {
+                Integer chunk = transactionTemplate.execute(status -> deleteChunk(bucket));
+                deleted = chunk != null ? chunk : 0;
+                deletedFromBucket += deleted;
+            } while (deleted == purgeChunkSize);
+
+            total += deletedFromBucket;
+            log.info("Purged {} processed events from expired bucket {}", deletedFromBucket, bucket);
+        }
+        return total;
+    }
+
+    private int deleteChunk(long bucket) {
+        List<Long> ids = processedEventRepository.findIdsByBucket(bucket, Limit.of(purgeChunkSize));
+        if (!ids.isEmpty()) {
+            processedEventRepository.deleteAllByIdInBatch(ids);
+        }
+        return ids.size();
+    }
+}
@@ -0,0 +1,186 @@
+package com.guilherme.course.store;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Tabela hash de endereçamento aberto (linear probing) gravada direto em um arquivo mapeado em memória.
+ *
+ * Cada slot tem 32 bytes:
+ *  [0, 16)  messageId (bits mais e menos significativos)
+ *  [16, 24) bucket de retenção
+ *  [24, 28) partição
+ *  [28, 32) CRC32C dos 28 bytes anteriores (0 = slot vazio)
+ *
+ * O checksum é escrito por último: um slot escrito pela metade quando o processo caiu não bate com o CRC e é
+ *  descartado na abertura (ver hasTornSlots). Como 32 divide o tamanho da página, um slot nunca fica em duas páginas.
+ *
+ * Não é thread-safe: o acesso é sincronizado pelo MappedProcessedEventStore.
+ */
+final class MappedHashIndex {
+    static final int MAX_CAPACITY = 1 << 25;    // 1GB: o MappedByteBuffer é endereçado por int
+
+    private static final int SLOT_SIZE = 32;
+    private static final int PAYLOAD_SIZE = 28;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private int size;
+    private int tornSlots;
+
+    record Entry(UUID messageId, int partition, long bucket) {
+    }
+
+    private MappedHashIndex(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+
+        for (int slot = 0; slot < capacity; slot++) {
+            int storedChecksum = buffer.getInt(slot * SLOT_SIZE + PAYLOAD_SIZE);
+            if (storedChecksum == 0) {
+                continue;
+            }
+            if (storedChecksum == checksum(slot * SLOT_SIZE)) {
+                size++;
+            } else {
+                tornSlots++;
+            }
+        }
+    }
+
+    // Abre o arquivo existente (com a capacidade dele) ou cria um novo com `capacity` slots
+    static MappedHashIndex open(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size() > 0 ? channel.size() : (long) capacity * SLOT_SIZE;
+
+        long slots = fileSize / SLOT_SIZE;
+        if (fileSize % SLOT_SIZE != 0 || slots > MAX_CAPACITY || Long.bitCount(slots) != 1) {
+            channel.close();
+            throw new IOException("Invalid processed events index size " + fileSize + " at " + path);
+        }
+
+        return new MappedHashIndex(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize), (int) slots);
+    }
+
+    boolean contains(UUID messageId) {
+        return findSlot(messageId) >= 0;
+    }
+
+    // false se o messageId já estava no índice
+    boolean insert(Entry entry) {
+        int slot = findSlot(entry.messageId());
+        if (slot >= 0) {
+            return false;
+        }
+        if (size >= capacity) {
+            throw new IllegalStateException("Processed events index is full");
+        }
+
+        slot = -slot - 1;
+        int offset = slot * SLOT_SIZE;
+        buffer.putLong(offset, entry.messageId().getMostSignificantBits());
+        buffer.putLong(offset + 8, entry.messageId().getLeastSignificantBits());
+        buffer.putLong(offset + 16, entry.bucket());
+        buffer.putInt(offset + 24, entry.partition());
+        buffer.putInt(offset + PAYLOAD_SIZE, checksum(offset));
+        size++;
+        return true;
+    }
+
+    void forEach(Consumer<Entry> action) {
+        forEach(0, capacity, action);
+    }
+
+    // Só os slots de [fromSlot, toSlot), para percorrer o índice em partes
+    void forEach(int fromSlot, int toSlot, Consumer<Entry> action) {
+        for (int slot = fromSlot; slot < toSlot; slot++) {
+            int offset = slot * SLOT_SIZE;
+            int storedChecksum = buffer.getInt(offset + PAYLOAD_SIZE);
+            if (storedChecksum != 0 && storedChecksum == checksum(offset)) {
+                action.accept(new Entry(
+                        new UUID(buffer.getLong(offset), buffer.getLong(offset + 8)),
+                        buffer.getInt(offset + 24),
+                        buffer.getLong(offset + 16)
+                ));
+            }
+        }
+    }
+
+    // Passando do load factor, as sequências de probing ficam longas: hora de compactar para uma tabela maior
+    boolean isFull() {
+        return size + 1 > capacity * MAX_LOAD_FACTOR;
+    }
+
+    // Slots com o checksum errado quebram as sequências de probing, então o índice precisa ser reconstruído
+    boolean hasTornSlots() {
+        return tornSlots > 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    // Garante que as escritas chegaram ao disco (e não só ao page cache)
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // Slot do messageId (>= 0) ou -(slot vazio onde ele entraria) - 1
+    private int findSlot(UUID messageId) {
+        long msb = messageId.getMostSignificantBits();
+        long lsb = messageId.getLeastSignificantBits();
+
+        int slot = hash(msb, lsb) & mask;
+        for (int probes = 0; probes < capacity; probes++) {
+            int offset = slot * SLOT_SIZE;
+            if (buffer.getInt(offset + PAYLOAD_SIZE) == 0) {
+                return -slot - 1;
+            }
+            if (buffer.getLong(offset) == msb && buffer.getLong(offset + 8) == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -capacity - 1;
+    }
+
+    private int checksum(int offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, PAYLOAD_SIZE));
+        int value = (int) crc.getValue();
+        return value != 0 ? value : 1;
+    }
+
+    /*
+     * Finalizador do MurmurHash3. Os messageIds são UUIDv7 (ver MessageIdUtil): os bits mais significativos são o
+     *  timestamp, quase iguais entre ids próximos, então eles são misturados com os bits aleatórios antes de escolher
+     *  o slot
+     */
+    private static int hash(long msb, long lsb) {
+        long hash = msb ^ lsb;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+}
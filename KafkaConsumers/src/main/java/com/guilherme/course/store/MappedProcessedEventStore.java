@@ -0,0 +1,270 @@
+package com.guilherme.course.store;
+
+import com.guilherme.course.entity.ProcessedEventEntity;
+import com.guilherme.course.repository.ProcessedMessageId;
+import com.guilherme.course.store.MappedHashIndex.Entry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Store local (app.kafka.consumer.store.type=mapped): os messageIds processados ficam em um índice hash mapeado em
+ *  memória (MappedHashIndex), em um arquivo que sobrevive aos restarts.
+ *
+ * Por que existe?
+ *  - Com o H2 em memória, todo restart perdia o histórico da deduplicação
+ *  - Cada consulta passava pelo JPA, Hibernate e SQL. Aqui é um hash e uma leitura de memória (microssegundos)
+ *
+ * Gravação:
+ *  - O messageId repetido é detectado na hora (DataIntegrityViolationException, igual ao índice único do banco),
+ *      inclusive dentro do mesmo batch e contra os ids de outra transação que ainda não terminou
+ *  - A inserção no índice só acontece depois do commit da transação em andamento: se ela for desfeita, a reentrega
+ *      da mensagem não pode ser confundida com uma duplicata. Até lá, o id fica reservado em `pending`
+ *  - Um processo que cai não perde nada (as páginas já estão no page cache). Com sync=true, cada commit também
+ *      espera a escrita no disco, cobrindo a queda da máquina
+ *
+ * Compactação: o índice é reescrito em um arquivo novo, que substitui o atual com um rename atômico (o arquivo é
+ *  sempre o antigo ou o novo inteiro). Acontece quando:
+ *  - Passa do load factor -> tabela com o dobro da capacidade
+ *  - Buckets de retenção expiram (ver ProcessedEventRetentionJob) -> mesma capacidade, sem os eventos expirados
+ *  - Há slots escritos pela metade na abertura -> mesma capacidade, só com os slots íntegros
+ *
+ * As consultas e gravações são sincronizadas: cada uma leva microssegundos, então a disputa entre as threads dos
+ *  consumers é pequena. A varredura do aquecimento da deduplicação é a exceção, e por isso é feita em partes, liberando
+ *  o lock entre elas.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.kafka.consumer.store.type", havingValue = "mapped")
+public class MappedProcessedEventStore implements ProcessedEventStore {
+    private static final int SCAN_CHUNK_SLOTS = 65536;
+
+    @Value("${app.kafka.consumer.store.mapped.path}")
+    private String path;
+
+    @Value("${app.kafka.consumer.store.mapped.initial-capacity}")
+    private int initialCapacity;
+
+    @Value("${app.kafka.consumer.store.mapped.sync}")
+    private boolean sync;
+
+    private Path indexPath;
+    private MappedHashIndex index;
+
+    // Muda a cada compactação, quando os slots mudam de lugar
+    private long generation;
+
+    /*
+     * Ids já aceitos por um saveAll cuja transação ainda não terminou (o índice só recebe o id depois do commit).
+     *  Sem isso, duas transações com o mesmo messageId passariam pela verificação antes de qualquer uma inserir
+     */
+    private final Set<UUID> pending = new HashSet<>();
+
+    @PostConstruct
+    synchronized void open() throws IOException {
+        indexPath = Path.of(path).toAbsolutePath();
+        Files.createDirectories(indexPath.getParent());
+
+        index = MappedHashIndex.open(indexPath, Integer.highestOneBit(Math.min(initialCapacity, MappedHashIndex.MAX_CAPACITY)));
+        if (index.hasTornSlots()) {
+            log.warn("Processed events index at {} has partially written slots, rebuilding it", indexPath);
+            compact(index.capacity(), entry -> true);
+        }
+
+        log.info("Processed events index at {} opened with {} messageIds ({} slots)", indexPath, index.size(), index.capacity());
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        index.close();
+    }
+
+    @Override
+    public synchronized boolean contains(UUID messageId) {
+        return index.contains(messageId);
+    }
+
+    @Override
+    public synchronized Set<UUID> findExisting(Collection<UUID> messageIds) {
+        Set<UUID> existing = new HashSet<>();
+        for (UUID messageId : messageIds) {
+            if (index.contains(messageId)) {
+                existing.add(messageId);
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public void save(ProcessedEventEntity entity) {
+        saveAll(List.of(entity));
+    }
+
+    @Override
+    public void saveAll(List<ProcessedEventEntity> entities) {
+        List<Entry> entries = entities.stream()
+                .map(entity -> new Entry(entity.getMessageId(), entity.getPartition(), entity.getBucket()))
+                .toList();
+
+        reserve(entries);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                append(entries);
+            } finally {
+                release(entries);
+            }
+            return;
+        }
+
+        // O afterCommit roda antes do afterCompletion: o id sai de `pending` só depois de estar no índice
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                append(entries);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                release(entries);
+            }
+        });
+    }
+
+    // Verifica o batch inteiro antes de reservar qualquer id: ou todos entram em `pending`, ou nenhum
+    private synchronized void reserve(List<Entry> entries) {
+        Set<UUID> batch = new HashSet<>();
+        for (Entry entry : entries) {
+            UUID messageId = entry.messageId();
+            if (index.contains(messageId) || pending.contains(messageId) || !batch.add(messageId)) {
+                throw new DataIntegrityViolationException("messageId " + messageId + " already processed");
+            }
+        }
+        pending.addAll(batch);
+    }
+
+    private synchronized void release(List<Entry> entries) {
+        entries.forEach(entry -> pending.remove(entry.messageId()));
+    }
+
+    /*
+     * A ordem é a da tabela hash, e não a de gravação: o LRU da deduplicação não termina com os mais recentes
+     *
+     * O índice é lido em blocos de SCAN_CHUNK_SLOTS slots, cada um com o lock, para que as consultas das threads dos
+     *  consumers não fiquem esperando a varredura inteira. Se houver uma compactação no meio, a varredura recomeça.
+     *  Um id inserido em um bloco já lido fica de fora, mas quem aquece a deduplicação também recebe os ids gravados
+     *  durante a leitura (ver ProcessedEventDeduplicator)
+     */
+    @Override
+    public Stream<ProcessedMessageId> streamMessageIds(int partition, long oldestBucket) {
+        List<ProcessedMessageId> messageIds = new ArrayList<>();
+        long scanGeneration = -1;
+        int slot = 0;
+
+        while (true) {
+            synchronized (this) {
+                if (scanGeneration != generation) {
+                    messageIds.clear();
+                    scanGeneration = generation;
+                    slot = 0;
+                }
+                if (slot >= index.capacity()) {
+                    return messageIds.stream();
+                }
+
+                int end = Math.min(slot + SCAN_CHUNK_SLOTS, index.capacity());
+                index.forEach(slot, end, entry -> {
+                    if (entry.partition() == partition && entry.bucket() >= oldestBucket) {
+                        messageIds.add(new ProcessedMessageId(entry.messageId(), entry.bucket()));
+                    }
+                });
+                slot = end;
+            }
+        }
+    }
+
+    @Override
+    public synchronized long deleteBucketsBefore(long oldestBucket) {
+        long[] expired = { 0 };
+        index.forEach(entry -> {
+            if (entry.bucket() < oldestBucket) {
+                expired[0]++;
+            }
+        });
+
+        if (expired[0] > 0) {
+            compact(index.capacity(), entry -> entry.bucket() >= oldestBucket);
+            log.info("Purged {} processed events from buckets before {}", expired[0], oldestBucket);
+        }
+        return expired[0];
+    }
+
+    /*
+     * Com a reserva em `pending`, nenhum id do batch pode já estar no índice. Se estiver, os outros ids continuam
+     *  sendo inseridos e a duplicata é reportada no final, ao invés de sumir em silêncio
+     */
+    private synchronized void append(List<Entry> entries) {
+        List<UUID> duplicates = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (index.isFull()) {
+                compact(Math.min(index.capacity() * 2, MappedHashIndex.MAX_CAPACITY), kept -> true);
+            }
+            if (!index.insert(entry)) {
+                duplicates.add(entry.messageId());
+            }
+        }
+
+        if (sync) {
+            index.force();
+        }
+
+        if (!duplicates.isEmpty()) {
+            throw new DataIntegrityViolationException("messageIds " + duplicates + " already processed");
+        }
+    }
+
+    // Reescreve os slots mantidos em um arquivo novo, que substitui o atual com um rename atômico
+    private void compact(int capacity, Predicate<Entry> keep) {
+        Path compactPath = indexPath.resolveSibling(indexPath.getFileName() + ".compact");
+
+        try {
+            Files.deleteIfExists(compactPath);
+            MappedHashIndex compacted = MappedHashIndex.open(compactPath, capacity);
+            index.forEach(entry -> {
+                if (keep.test(entry)) {
+                    compacted.insert(entry);
+                }
+            });
+            compacted.close();
+            index.close();
+
+            Files.move(compactPath, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            index = MappedHashIndex.open(indexPath, capacity);
+            generation++;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to compact processed events index at " + indexPath, ex);
+        }
+
+        log.info("Processed events index compacted to {} messageIds ({} slots)", index.size(), index.capacity());
+    }
+}
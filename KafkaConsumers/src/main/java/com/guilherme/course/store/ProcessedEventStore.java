@@ -0,0 +1,35 @@
+package com.guilherme.course.store;
+
+import com.guilherme.course.entity.ProcessedEventEntity;
+import com.guilherme.course.repository.ProcessedMessageId;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Onde ficam os eventos processados, consultados pela deduplicação (app.kafka.consumer.store.type):
+ *  - jpa    -> JpaProcessedEventStore: tabela processed-events, pelo ProcessedEventRepository
+ *  - mapped -> MappedProcessedEventStore: índice hash em um arquivo local mapeado em memória, sem banco
+ *
+ * Em ambos, um messageId repetido lança DataIntegrityViolationException, e a gravação só vale se a transação em
+ *  andamento for commitada.
+ */
+public interface ProcessedEventStore {
+    boolean contains(UUID messageId);
+
+    // Quais dos messageIds já foram processados
+    Set<UUID> findExisting(Collection<UUID> messageIds);
+
+    void save(ProcessedEventEntity entity);
+
+    void saveAll(List<ProcessedEventEntity> entities);
+
+    // messageIds de uma partição a partir de um bucket de retenção, usados no aquecimento da deduplicação
+    Stream<ProcessedMessageId> streamMessageIds(int partition, long oldestBucket);
+
+    // Remove os eventos dos buckets de retenção expirados e devolve quantos foram removidos
+    long deleteBucketsBefore(long oldestBucket);
+}
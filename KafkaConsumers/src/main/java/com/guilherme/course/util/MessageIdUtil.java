@@ -0,0 +1,48 @@
+package com.guilherme.course.util;
+
+import com.guilherme.course.exceptions.NotRetryableException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+public class MessageIdUtil {
+    private static final int BINARY_LENGTH = 16;
+    private static final int TEXT_LENGTH = 36;
+
+    private MessageIdUtil() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Converte o header "messageId" para UUID.
+     *  - 16 bytes -> formato binário (UUIDv7) enviado pelo KafkaProducers. Lido direto como dois longs, sem criar String
+     *  - 36 bytes -> formato texto antigo (UUID.toString()), aceito enquanto ainda houver mensagens antigas nos tópicos
+     */
+    public static UUID fromHeader(byte[] header) {
+        if (header == null) {
+            throw new NotRetryableException("Missing messageId header");
+        }
+
+        if (header.length == BINARY_LENGTH) {
+            return new UUID(readLong(header, 0), readLong(header, 8));
+        }
+
+        if (header.length == TEXT_LENGTH) {
+            try {
+                return UUID.fromString(new String(header, StandardCharsets.US_ASCII));
+            } catch (IllegalArgumentException ex) {
+                throw new NotRetryableException(ex);
+            }
+        }
+
+        throw new NotRetryableException("Invalid messageId header length: " + header.length);
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+}
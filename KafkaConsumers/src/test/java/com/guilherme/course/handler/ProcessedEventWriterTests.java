@@ -0,0 +1,115 @@
+package com.guilherme.course.handler;
+
+import com.guilherme.course.circuitbreaker.RemoteServiceCircuitBreaker;
+import com.guilherme.course.client.CoalescingRemoteClient;
+import com.guilherme.course.dedup.ProcessedEventDeduplicator;
+import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.metrics.ListenerStageMetrics;
+import com.guilherme.course.offset.ConsumerOffsetStore;
+import com.guilherme.course.repository.ProcessedEventRepository;
+import com.guilherme.course.retention.RetentionWindow;
+import com.guilherme.course.service.ProductCreatedEventService;
+import com.guilherme.course.store.JpaProcessedEventStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+/*
+ * Fallback um a um do ProcessedEventWriter contra o store jpa (H2)
+ *
+ * Sem a transação do teste: o writer abre e commita as próprias transações, e o que interessa é o que sobra no banco
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProcessedEventWriterTests {
+    private static final String TOPIC = "product-created-events-topic";
+    private static final ProductCreatedEvent EVENT = new ProductCreatedEvent("p-1", "Café", new BigDecimal("12.34"), 5);
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ConsumerOffsetStore consumerOffsetStore = mock(ConsumerOffsetStore.class);
+    private ProductCreatedEventService productCreatedEventService;
+    private ProcessedEventWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        productCreatedEventService = new ProductCreatedEventService(
+                mock(WebClient.class),
+                new JpaProcessedEventStore(processedEventRepository, transactionManager),
+                mock(ProcessedEventDeduplicator.class),
+                new ListenerStageMetrics(new SimpleMeterRegistry()),
+                mock(RemoteServiceCircuitBreaker.class),
+                mock(CoalescingRemoteClient.class),
+                mock(RetentionWindow.class)
+        );
+        writer = new ProcessedEventWriter(productCreatedEventService, new TransactionTemplate(transactionManager), consumerOffsetStore);
+    }
+
+    @AfterEach
+    void tearDown() {
+        processedEventRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void failsOnlyTheRecordAlreadySavedByAnotherConsumer() {
+        IncomingEvent saved = incomingEvent(10L);
+        IncomingEvent duplicate = incomingEvent(11L);
+        processedEventRepository.saveAndFlush(productCreatedEventService.toEntity(duplicate.messageId(), 0, EVENT));
+
+        Optional<BatchListenerFailedException> failure = writer.save(List.of(saved, duplicate));
+
+        assertThat(failure).hasValueSatisfying(ex -> assertThat(ex.getRecord()).isSameAs(duplicate.consumerRecord()));
+        assertThat(processedEventRepository.findByMessageId(saved.messageId())).isPresent();
+        assertThat(processedEventRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void failsOnlyTheRecordWhoseTransactionViolatesAConstraint() {
+        IncomingEvent saved = incomingEvent(10L);
+        IncomingEvent failed = incomingEvent(11L);
+
+        // Violação que não passa pelo saveEvent (e não vira NotRetryableException): a gravação do offset, na mesma transação
+        doThrow(new DataIntegrityViolationException("duplicate offset")).when(consumerOffsetStore).store(anyMap());
+        doThrow(new DataIntegrityViolationException("duplicate offset")).when(consumerOffsetStore).store(eq(0), eq(11L));
+
+        Optional<BatchListenerFailedException> failure = writer.save(List.of(saved, failed));
+
+        assertThat(failure).hasValueSatisfying(ex -> {
+            assertThat(ex.getRecord()).isSameAs(failed.consumerRecord());
+            assertThat(ex.getCause()).isInstanceOf(DataIntegrityViolationException.class);
+        });
+        assertThat(processedEventRepository.findByMessageId(saved.messageId())).isPresent();
+        assertThat(processedEventRepository.findByMessageId(failed.messageId())).isEmpty();
+    }
+
+    private static IncomingEvent incomingEvent(long offset) {
+        ConsumerRecord<String, Object> consumerRecord = new ConsumerRecord<>(TOPIC, 0, offset, EVENT.productId(), EVENT);
+        return new IncomingEvent(consumerRecord, UUID.randomUUID(), EVENT);
+    }
+}
@@ -0,0 +1,64 @@
+package com.guilherme.course.replay;
+
+import com.guilherme.course.kafka.retry.RetryTopicRouter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DltReplayServiceTests {
+    private static final String TOPIC = "product-created-events-topic";
+
+    @Test
+    void replaysRecordThatExhaustedRetryTiersToMainTopic() {
+        byte[] key = bytes("p-1");
+        byte[] value = bytes("payload");
+        byte[] messageId = bytes("0190f1c2-7a3b-7c4d-8e5f-123456789abc");
+
+        // main -> retry-1 -> retry-2 -> retry-3 -> dlt: a cada salto o recoverer acrescenta os headers do tópico de onde veio
+        ConsumerRecord<byte[], byte[]> consumerRecord = new ConsumerRecord<>(RetryTopicRouter.deadLetterTopic(TOPIC), 1, 7L, key, value);
+        Headers headers = consumerRecord.headers();
+        headers.add("messageId", messageId);
+        List<String> hops = new ArrayList<>();
+        hops.add(TOPIC);
+        hops.addAll(RetryTopicRouter.retryTopics(TOPIC));
+        for (int tier = 0; tier < hops.size(); tier++) {
+            headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, bytes(hops.get(tier)));
+            headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, bytes("com.guilherme.course.exceptions.RetryableException"));
+            if (tier < RetryTopicRouter.RETRY_TIERS) {
+                headers.add(RetryTopicRouter.RETRY_ATTEMPT_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(tier + 1).array());
+                headers.add(RetryTopicRouter.RETRY_DUE_AT_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(1000L * tier).array());
+            }
+        }
+
+        ProducerRecord<byte[], byte[]> replayed = DltReplayService.toOriginalTopic(consumerRecord);
+
+        assertThat(replayed.topic()).isEqualTo(TOPIC);
+        assertThat(replayed.partition()).isNull();
+        assertThat(replayed.key()).isEqualTo(key);
+        assertThat(replayed.value()).isEqualTo(value);
+        assertThat(replayed.headers().toArray()).extracting(Header::key).containsExactly("messageId");
+        assertThat(replayed.headers().lastHeader("messageId").value()).isEqualTo(messageId);
+    }
+
+    @Test
+    void replaysRecordThatFailedOnMainTopicToMainTopic() {
+        ConsumerRecord<byte[], byte[]> consumerRecord = new ConsumerRecord<>(RetryTopicRouter.deadLetterTopic(TOPIC), 0, 3L, null, bytes("payload"));
+        consumerRecord.headers().add(KafkaHeaders.DLT_ORIGINAL_TOPIC, bytes(TOPIC));
+
+        assertThat(DltReplayService.toOriginalTopic(consumerRecord).topic()).isEqualTo(TOPIC);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,113 @@
+package com.guilherme.course.serialization;
+
+import com.guilherme.course.events.ProductCreatedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.mapping.AbstractJavaTypeMapper;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ * Os bytes esperados abaixo são os mesmos do ProductCreatedEventSerializerTests do KafkaProducers, que garante que o
+ *  serializer produz exatamente esse formato
+ */
+class ProductCreatedEventDeserializerTests {
+    private static final String TOPIC = "product-created-events-topic";
+
+    // ProductCreatedEvent("p-1", "Café", 12.34, 5)
+    private static final String EVENT_HEX = "01"
+            + "00000003" + "702d31"
+            + "00000005" + "436166c3a9"
+            + "00000002" + "04d2" + "00000002"
+            + "01" + "00000005";
+
+    // ProductCreatedEvent(null, null, null, null)
+    private static final String NULL_FIELDS_HEX = "01" + "ffffffff" + "ffffffff" + "ffffffff" + "00";
+
+    private ProductCreatedEventDeserializer deserializer;
+
+    @BeforeEach
+    void setUp() {
+        deserializer = new ProductCreatedEventDeserializer();
+        deserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "com.guilherme.course.events"), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        deserializer.close();
+    }
+
+    @Test
+    void decodesBinaryFormat() {
+        Object event = deserializer.deserialize(TOPIC, new RecordHeaders(), HexFormat.of().parseHex(EVENT_HEX));
+
+        assertThat(event).isEqualTo(new ProductCreatedEvent("p-1", "Café", new BigDecimal("12.34"), 5));
+    }
+
+    @Test
+    void decodesNullFields() {
+        Object event = deserializer.deserialize(TOPIC, HexFormat.of().parseHex(NULL_FIELDS_HEX));
+
+        assertThat(event).isEqualTo(new ProductCreatedEvent(null, null, null, null));
+    }
+
+    @Test
+    void fallsBackToJsonWithTypeHeaders() {
+        byte[] json = """
+                {"productId":"p-1","title":"Café","price":12.34,"quantity":5}
+                """.getBytes(StandardCharsets.UTF_8);
+
+        // Header que o JsonSerializer do KafkaProducers adiciona a cada registro
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME,
+                ProductCreatedEvent.class.getName().getBytes(StandardCharsets.UTF_8));
+
+        Object event = deserializer.deserialize(TOPIC, headers, json);
+
+        assertThat(event).isEqualTo(new ProductCreatedEvent("p-1", "Café", new BigDecimal("12.34"), 5));
+    }
+
+    @Test
+    void nullDataStaysNull() {
+        assertThat(deserializer.deserialize(TOPIC, new RecordHeaders(), (byte[]) null)).isNull();
+        // Overload do Kafka para ByteBuffer: converte para byte[] e cai no mesmo caminho
+        assertThat(deserializer.deserialize(TOPIC, new RecordHeaders(), (ByteBuffer) null)).isNull();
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        // Uma versão que este consumer não conhece não é binária para ele: vai para o JSON, que falha
+        byte[] data = HexFormat.of().parseHex(EVENT_HEX);
+        data[0] = 2;
+
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME,
+                ProductCreatedEvent.class.getName().getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> deserializer.deserialize(TOPIC, headers, data))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    void rejectsTruncatedPayload() {
+        byte[] data = HexFormat.of().parseHex(EVENT_HEX);
+
+        for (int length = 1; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThatThrownBy(() -> deserializer.deserialize(TOPIC, new RecordHeaders(), truncated))
+                    .isInstanceOf(SerializationException.class);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.guilherme.course.store;
+
+import com.guilherme.course.store.MappedHashIndex.Entry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedHashIndexTests {
+    private static final int SLOT_SIZE = 32;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void insertsAndFindsEntries() throws IOException {
+        MappedHashIndex index = MappedHashIndex.open(directory.resolve("index"), 16);
+        Entry entry = new Entry(UUID.randomUUID(), 3, 42L);
+
+        assertThat(index.insert(entry)).isTrue();
+        assertThat(index.contains(entry.messageId())).isTrue();
+        assertThat(index.contains(UUID.randomUUID())).isFalse();
+
+        List<Entry> entries = new ArrayList<>();
+        index.forEach(entries::add);
+        assertThat(entries).containsExactly(entry);
+        index.close();
+    }
+
+    @Test
+    void rejectsDuplicateInsert() throws IOException {
+        MappedHashIndex index = MappedHashIndex.open(directory.resolve("index"), 16);
+        UUID messageId = UUID.randomUUID();
+
+        assertThat(index.insert(new Entry(messageId, 0, 1L))).isTrue();
+        assertThat(index.insert(new Entry(messageId, 1, 2L))).isFalse();
+        assertThat(index.size()).isEqualTo(1);
+        index.close();
+    }
+
+    @Test
+    void keepsEntriesAfterReopen() throws IOException {
+        Path path = directory.resolve("index");
+        MappedHashIndex index = MappedHashIndex.open(path, 16);
+        List<UUID> messageIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        messageIds.forEach(messageId -> index.insert(new Entry(messageId, 0, 1L)));
+        index.close();
+
+        // A capacidade pedida na reabertura é ignorada: vale a do arquivo
+        MappedHashIndex reopened = MappedHashIndex.open(path, 1024);
+        assertThat(reopened.capacity()).isEqualTo(16);
+        assertThat(reopened.size()).isEqualTo(3);
+        assertThat(messageIds).allMatch(reopened::contains);
+        assertThat(reopened.hasTornSlots()).isFalse();
+        reopened.close();
+    }
+
+    @Test
+    void detectsTornSlotOnOpen() throws IOException {
+        Path path = directory.resolve("index");
+        MappedHashIndex index = MappedHashIndex.open(path, 16);
+        index.insert(new Entry(UUID.randomUUID(), 0, 1L));
+        index.insert(new Entry(UUID.randomUUID(), 0, 1L));
+        index.close();
+
+        corruptFirstSlot(path);
+
+        MappedHashIndex reopened = MappedHashIndex.open(path, 16);
+        assertThat(reopened.hasTornSlots()).isTrue();
+        assertThat(reopened.size()).isEqualTo(1);
+
+        List<Entry> entries = new ArrayList<>();
+        reopened.forEach(entries::add);
+        assertThat(entries).hasSize(1);
+        reopened.close();
+    }
+
+    // Simula um slot escrito pela metade: o payload muda, mas o CRC continua o antigo
+    static void corruptFirstSlot(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        for (int offset = 0; offset < bytes.length; offset += SLOT_SIZE) {
+            if (buffer.getInt(offset + 28) != 0) {
+                bytes[offset + 16] ^= 0x7f;
+                Files.write(path, bytes);
+                return;
+            }
+        }
+        throw new IllegalStateException("Index has no written slot");
+    }
+}
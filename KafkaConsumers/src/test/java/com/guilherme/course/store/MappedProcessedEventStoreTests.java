@@ -0,0 +1,213 @@
+package com.guilherme.course.store;
+
+import com.guilherme.course.entity.ProcessedEventEntity;
+import com.guilherme.course.repository.ProcessedMessageId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedProcessedEventStoreTests {
+    @TempDir
+    Path directory;
+
+    private Path indexPath;
+    private MappedProcessedEventStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        indexPath = directory.resolve("processed-events.idx");
+        store = openStore();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        store.close();
+    }
+
+    @Test
+    void savesAndFindsMessageIds() {
+        ProcessedEventEntity first = event(0, 1L);
+        ProcessedEventEntity second = event(1, 1L);
+        store.saveAll(List.of(first, second));
+
+        assertThat(store.contains(first.getMessageId())).isTrue();
+        assertThat(store.findExisting(List.of(first.getMessageId(), UUID.randomUUID())))
+                .containsExactly(first.getMessageId());
+        assertThat(store.streamMessageIds(1, 0L).map(ProcessedMessageId::messageId))
+                .containsExactly(second.getMessageId());
+    }
+
+    @Test
+    void rejectsAlreadyProcessedMessageId() {
+        ProcessedEventEntity event = event(0, 1L);
+        store.save(event);
+
+        assertThatThrownBy(() -> store.save(event)).isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void rejectsDuplicateInsideTheSameBatchWithoutSavingIt() {
+        ProcessedEventEntity event = event(0, 1L);
+        ProcessedEventEntity other = event(0, 1L);
+
+        assertThatThrownBy(() -> store.saveAll(List.of(other, event, event)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+
+        // Nada do batch foi reservado nem gravado, então ele pode ser salvo de novo depois de corrigido
+        assertThat(store.contains(other.getMessageId())).isFalse();
+        store.saveAll(List.of(other, event));
+        assertThat(store.findExisting(List.of(other.getMessageId(), event.getMessageId()))).hasSize(2);
+    }
+
+    @Test
+    void insertsOnlyAfterCommit() {
+        ProcessedEventEntity event = event(0, 1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        store.save(event);
+        assertThat(store.contains(event.getMessageId())).isFalse();
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(store.contains(event.getMessageId())).isTrue();
+    }
+
+    @Test
+    void rejectsMessageIdPendingInAnotherTransaction() {
+        ProcessedEventEntity event = event(0, 1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        store.save(event);
+        List<TransactionSynchronization> firstTransaction = detachSynchronizations();
+
+        // Segunda transação com o mesmo messageId, antes do commit da primeira
+        TransactionSynchronizationManager.initSynchronization();
+        assertThatThrownBy(() -> store.save(event)).isInstanceOf(DataIntegrityViolationException.class);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        TransactionSynchronizationManager.initSynchronization();
+        firstTransaction.forEach(TransactionSynchronizationManager::registerSynchronization);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(store.contains(event.getMessageId())).isTrue();
+    }
+
+    @Test
+    void releasesMessageIdAfterRollback() {
+        ProcessedEventEntity event = event(0, 1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        store.save(event);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(store.contains(event.getMessageId())).isFalse();
+
+        // A reentrega da mensagem não é uma duplicata
+        store.save(event);
+        assertThat(store.contains(event.getMessageId())).isTrue();
+    }
+
+    @Test
+    void growsWhenLoadFactorIsReached() {
+        List<ProcessedEventEntity> events = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            events.add(event(i % 3, 1L));
+        }
+        store.saveAll(events);
+
+        assertThat(index().capacity()).isGreaterThan(16);
+        assertThat(index().size()).isEqualTo(40);
+        assertThat(events).allMatch(event -> store.contains(event.getMessageId()));
+    }
+
+    @Test
+    void compactsAwayExpiredBuckets() {
+        ProcessedEventEntity expired = event(0, 1L);
+        ProcessedEventEntity kept = event(0, 5L);
+        store.saveAll(List.of(expired, kept));
+
+        assertThat(store.deleteBucketsBefore(5L)).isEqualTo(1);
+        assertThat(store.contains(expired.getMessageId())).isFalse();
+        assertThat(store.contains(kept.getMessageId())).isTrue();
+        assertThat(store.deleteBucketsBefore(5L)).isZero();
+    }
+
+    @Test
+    void keepsMessageIdsAfterReopen() throws IOException {
+        ProcessedEventEntity event = event(2, 7L);
+        store.save(event);
+        store.close();
+
+        store = openStore();
+        assertThat(store.contains(event.getMessageId())).isTrue();
+        assertThat(store.streamMessageIds(2, 7L).map(ProcessedMessageId::bucket)).containsExactly(7L);
+    }
+
+    @Test
+    void rebuildsIndexWithTornSlotsOnOpen() throws IOException {
+        List<ProcessedEventEntity> events = List.of(event(0, 1L), event(0, 1L), event(0, 1L));
+        store.saveAll(events);
+        store.close();
+
+        MappedHashIndexTests.corruptFirstSlot(indexPath);
+
+        store = openStore();
+        assertThat(index().hasTornSlots()).isFalse();
+        assertThat(index().size()).isEqualTo(2);
+        assertThat(store.findExisting(events.stream().map(ProcessedEventEntity::getMessageId).toList())).hasSize(2);
+    }
+
+    private MappedProcessedEventStore openStore() throws IOException {
+        MappedProcessedEventStore opened = new MappedProcessedEventStore();
+        ReflectionTestUtils.setField(opened, "path", indexPath.toString());
+        ReflectionTestUtils.setField(opened, "initialCapacity", 16);
+        ReflectionTestUtils.setField(opened, "sync", false);
+        opened.open();
+        return opened;
+    }
+
+    private MappedHashIndex index() {
+        return (MappedHashIndex) ReflectionTestUtils.getField(store, "index");
+    }
+
+    // O que o JpaTransactionManager faz no fim da transação
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = detachSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+        }
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status);
+    }
+
+    private static List<TransactionSynchronization> detachSynchronizations() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        return synchronizations;
+    }
+
+    private static ProcessedEventEntity event(int partition, long bucket) {
+        return ProcessedEventEntity.builder()
+                .messageId(UUID.randomUUID())
+                .productId("p-" + partition)
+                .partition(partition)
+                .processedAt(Instant.now())
+                .bucket(bucket)
+                .build();
+    }
+}
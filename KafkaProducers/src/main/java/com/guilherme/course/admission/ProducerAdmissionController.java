@@ -0,0 +1,130 @@
+package com.guilherme.course.admission;
+
+import com.guilherme.course.exceptions.ProducerSaturatedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controle de admissão na frente do envio para o Kafka.
+ *
+ * Por que existe?
+ *  - Quando os brokers ficam lentos, o buffer do producer enche e o send() passa a bloquear por até max.block.ms
+ *  - A latência sobe sem nenhum sinal para quem está chamando, até que o JVM inteiro fique travado esperando
+ *
+ * Como funciona:
+ *  - Cada envio precisa de uma permissão, limitada pela quantidade de registros e de bytes em voo
+ *  - A permissão é devolvida no callback do send (whenComplete), com sucesso ou falha
+ *  - Se não houver permissão disponível, o envio falha na hora com ProducerSaturatedException (HTTP 429)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProducerAdmissionController {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.kafka.producer.admission.max-in-flight-records}")
+    private int maxInFlightRecords;
+
+    @Value("${app.kafka.producer.admission.max-in-flight-bytes}")
+    private long maxInFlightBytes;
+
+    @Value("${app.kafka.producer.admission.retry-after-seconds}")
+    private long retryAfterSeconds;
+
+    private Semaphore recordPermits;
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    void init() {
+        recordPermits = new Semaphore(maxInFlightRecords);
+
+        Gauge.builder("product.producer.admission.saturation", this, ProducerAdmissionController::saturation)
+                .description("Maior ocupação entre registros e bytes em voo (0 a 1)")
+                .register(meterRegistry);
+        Gauge.builder("product.producer.admission.in-flight.records", this, c -> c.inFlightRecords())
+                .register(meterRegistry);
+        Gauge.builder("product.producer.admission.in-flight.bytes", inFlightBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("product.producer.admission.rejected")
+                .description("Envios recusados por falta de permissão")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tenta reservar espaço para um registro. Nunca bloqueia.
+     *
+     * @param estimatedBytes tamanho estimado do registro serializado
+     * @return a permissão, que precisa ser liberada quando o envio terminar
+     * @throws ProducerSaturatedException se o limite de registros ou de bytes em voo foi atingido
+     */
+    public Permit tryAcquire(int estimatedBytes) {
+        if (!recordPermits.tryAcquire()) {
+            throw reject("in-flight records limit reached");
+        }
+
+        if (!tryReserveBytes(estimatedBytes)) {
+            recordPermits.release();
+            throw reject("in-flight bytes limit reached");
+        }
+
+        return new Permit(estimatedBytes);
+    }
+
+    // Um registro maior que o limite ainda é aceito quando não há nada em voo, para não ficar recusado para sempre
+    private boolean tryReserveBytes(long bytes) {
+        while (true) {
+            long current = inFlightBytes.get();
+            if (current > 0 && current + bytes > maxInFlightBytes) {
+                return false;
+            }
+            if (inFlightBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    private ProducerSaturatedException reject(String reason) {
+        rejectedCounter.increment();
+        log.warn("Rejecting send, producer saturated: {}", reason);
+        return new ProducerSaturatedException("Producer saturated: " + reason, retryAfterSeconds);
+    }
+
+    private int inFlightRecords() {
+        return maxInFlightRecords - recordPermits.availablePermits();
+    }
+
+    private double saturation() {
+        double records = (double) inFlightRecords() / maxInFlightRecords;
+        double bytes = (double) inFlightBytes.get() / maxInFlightBytes;
+        return Math.max(records, bytes);
+    }
+
+    public final class Permit {
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long bytes) {
+            this.bytes = bytes;
+        }
+
+        // Pode ser chamado mais de uma vez, mas só libera na primeira
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                inFlightBytes.addAndGet(-bytes);
+                recordPermits.release();
+            }
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package com.guilherme.course.config;
 
 import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.producer.KafkaTemplatePool;
+import com.guilherme.course.serialization.ProductCreatedEventSerializer;
+import com.guilherme.course.util.ConstantUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.producer.ProducerConfig;
@@ -8,9 +13,11 @@ import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
@@ -19,9 +26,12 @@ import java.util.Map;
 
 @Configuration
 @Slf4j
+@RequiredArgsConstructor
 public class KafkaConfig {
     // As configurações que estão aqui tem maior prioridade do que as que estão no application.properties
 
+    private final MeterRegistry meterRegistry;
+
     @Value("${spring.kafka.producer.bootstrap-servers}")
     private String bootstrapServers;
 
@@ -37,6 +47,27 @@ public class KafkaConfig {
     @Value("${spring.kafka.producer.properties.request.timeout.ms}")
     private String requestTimeoutMs;
 
+    // json (padrão) ou binary. Ver ProductCreatedEventSerializer
+    @Value("${app.kafka.producer.value-format:json}")
+    private String valueFormat;
+
+    // Configurações do perfil de throughput (usado pelos envios fire-and-forget e em lote)
+    @Value("${app.kafka.producer.throughput.compression-type}")
+    private String throughputCompressionType;
+
+    @Value("${app.kafka.producer.throughput.batch-size}")
+    private int throughputBatchSize;
+
+    @Value("${app.kafka.producer.throughput.linger-ms}")
+    private int throughputLingerMs;
+
+    @Value("${app.kafka.producer.throughput.buffer-memory}")
+    private long throughputBufferMemory;
+
+    // Quantidade de KafkaProducers por perfil (1 = um único producer)
+    @Value("${app.kafka.producer.pool-size}")
+    private int poolSize;
+
     /**
      * ProducerFactory é uma fábrica responsável por criar instâncias do KafkaProducer.
      *
@@ -54,15 +85,62 @@ public class KafkaConfig {
      * - Quando solicitado, cria uma nova instância de KafkaProducer com essas configurações
      * - É tipado com <String, ProductCreatedEvent>, indicando que as mensagens terão
      *   chaves do tipo String e valores do tipo ProductCreatedEvent
+     *
+     * Essa é a fábrica do perfil de LATÊNCIA (linger.ms do application.properties, sem compressão), usada pelo
+     * envio síncrono, em que o cliente HTTP fica esperando o ack do broker.
      */
+    @Primary
     @Bean
     public ProducerFactory<String, ProductCreatedEvent> producerFactory() {
+        return withClientMetrics(new DefaultKafkaProducerFactory<>(producerConfig()));
+    }
+
+    /*
+     * Fábrica do perfil de THROUGHPUT. Parte das mesmas configurações do perfil de latência e troca apenas o que
+     * controla o tamanho dos batches:
+     *  - compression.type -> comprime o batch inteiro, então quanto maior o batch, melhor a taxa de compressão
+     *  - batch.size       -> tamanho máximo (em bytes) de um batch por partição
+     *  - linger.ms        -> quanto tempo o producer espera para encher o batch antes de enviar
+     *  - buffer.memory    -> memória total para os registros que ainda não foram enviados ao broker
+     *
+     * Usada pelos envios em que ninguém está esperando o ack (async e batch), então alguns milissegundos a mais
+     *  de latência não importam e o ganho de throughput é grande
+     */
+    @Bean
+    public ProducerFactory<String, ProductCreatedEvent> throughputProducerFactory() {
+        Map<String, Object> config = producerConfig();
+
+        String placeholder = "[throughput] {}: {}";
+        log.info(placeholder, ProducerConfig.COMPRESSION_TYPE_CONFIG, throughputCompressionType);
+        log.info(placeholder, ProducerConfig.BATCH_SIZE_CONFIG, throughputBatchSize);
+        log.info(placeholder, ProducerConfig.LINGER_MS_CONFIG, throughputLingerMs);
+        log.info(placeholder, ProducerConfig.BUFFER_MEMORY_CONFIG, throughputBufferMemory);
+
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, throughputCompressionType);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, throughputBatchSize);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, throughputLingerMs);
+        config.put(ProducerConfig.BUFFER_MEMORY_CONFIG, throughputBufferMemory);
+
+        return withClientMetrics(new DefaultKafkaProducerFactory<>(config));
+    }
+
+    /*
+     * Publica no Micrometer as métricas internas de cada KafkaProducer criado pela fábrica (kafka.producer.*), como
+     *  buffer-available-bytes, batch-size-avg, record-queue-time-avg, compression-rate-avg e request-latency-avg
+     */
+    private ProducerFactory<String, ProductCreatedEvent> withClientMetrics(DefaultKafkaProducerFactory<String, ProductCreatedEvent> factory) {
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
+    }
+
+    private Map<String, Object> producerConfig() {
         Map<String, Object> config = new HashMap<>();
+        Class<?> valueSerializer = valueSerializer();
 
         String placeholder = "{}: {}";
         log.info(placeholder, ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         log.info(placeholder, ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        log.info(placeholder, ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        log.info(placeholder, ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, valueSerializer);
         log.info(placeholder, ProducerConfig.ACKS_CONFIG, acks);
         log.info(placeholder, ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, deliveryTimeoutMs);
         log.info(placeholder, ProducerConfig.LINGER_MS_CONFIG, lingerMs);
@@ -70,7 +148,7 @@ public class KafkaConfig {
 
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, valueSerializer);
         config.put(ProducerConfig.ACKS_CONFIG, acks);
         config.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, deliveryTimeoutMs);
         config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
@@ -86,7 +164,18 @@ public class KafkaConfig {
          */
         config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
 
-        return new DefaultKafkaProducerFactory<>(config);
+        return config;
+    }
+
+    /*
+     * Formato do valor das mensagens:
+     *  - json   -> JsonSerializer do Spring (texto + header com o tipo da classe)
+     *  - binary -> ProductCreatedEventSerializer (formato binário compacto, sem reflexão)
+     *
+     * O KafkaConsumers entende os dois formatos, então a troca pode ser feita sem parar os consumers
+     */
+    private Class<?> valueSerializer() {
+        return "binary".equalsIgnoreCase(valueFormat) ? ProductCreatedEventSerializer.class : JsonSerializer.class;
     }
 
     /**
@@ -113,16 +202,40 @@ public class KafkaConfig {
      * - Métodos mais simples e intuitivos
      * - Melhor tratamento de erros
      * - Suporte a métricas e monitoring automático
+     *
+     * Cada perfil tem o seu KafkaTemplate (e, consequentemente, o seu próprio KafkaProducer), para que os envios
+     * de um perfil não disputem o mesmo buffer e os mesmos batches com os do outro
      */
+    @Primary
     @Bean
     public KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactory());
     }
 
+    @Bean
+    public KafkaTemplate<String, ProductCreatedEvent> throughputKafkaTemplate() {
+        return new KafkaTemplate<>(throughputProducerFactory());
+    }
+
+    /*
+     * Pools de producers de cada perfil, usados pelo ProductService. O registro é roteado pelo hash da chave, então
+     *  várias threads enviando ao mesmo tempo se dividem entre producers (e threads de envio) diferentes
+     */
+    @Primary
+    @Bean
+    public KafkaTemplatePool<String, ProductCreatedEvent> kafkaTemplatePool() {
+        return new KafkaTemplatePool<>(kafkaTemplate(), poolSize);
+    }
+
+    @Bean
+    public KafkaTemplatePool<String, ProductCreatedEvent> throughputKafkaTemplatePool() {
+        return new KafkaTemplatePool<>(throughputKafkaTemplate(), poolSize);
+    }
+
     @Bean
     public NewTopic createTopic() {
         return TopicBuilder
-                .name("product-created-events")
+                .name(ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC)
                 .partitions(3)
                 .replicas(3)
                 .config("min.insync.replicas", "2")
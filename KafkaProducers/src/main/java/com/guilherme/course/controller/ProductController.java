@@ -2,16 +2,24 @@ package com.guilherme.course.controller;
 
 import com.guilherme.course.command.CreateProductCommand;
 import com.guilherme.course.exceptions.ErrorMessage;
+import com.guilherme.course.exceptions.ProducerSaturatedException;
+import com.guilherme.course.response.BatchCreateProductResponse;
 import com.guilherme.course.service.ProductService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @RestController
@@ -26,15 +34,36 @@ public class ProductController {
         return ResponseEntity.ok(productId);
     }
 
+    /*
+     * Retornar um CompletableFuture faz o Spring MVC tratar a requisição de forma assíncrona:
+     *  a thread do Tomcat é liberada na hora e a resposta é escrita quando o future completar
+     *  (ou seja, quando o broker confirmar o recebimento da mensagem)
+     */
     @PostMapping("/sync")
-    public ResponseEntity<Object> createProductSynchronously(@RequestBody CreateProductCommand command) {
-        try {
-            String productId = productService.createProductSynchronously(command);
-            return ResponseEntity.ok(productId);
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-            return ResponseEntity.internalServerError()
-                    .body(new ErrorMessage(new Date(), e.getMessage(), "/products"));
-        }
+    public CompletableFuture<ResponseEntity<Object>> createProductSynchronously(@RequestBody CreateProductCommand command) {
+        return productService.createProductSynchronously(command)
+                .<ResponseEntity<Object>>thenApply(ResponseEntity::ok)
+                .exceptionally(ex -> {
+                    Throwable e = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    log.error(e.getMessage(), e);
+                    return ResponseEntity.internalServerError()
+                            .body(new ErrorMessage(new Date(), e.getMessage(), "/products"));
+                });
+    }
+
+    // Se algum item falhar, retorna 207 (Multi-Status) para o cliente olhar a lista de falhas
+    @PostMapping("/batch")
+    public ResponseEntity<BatchCreateProductResponse> createProductsInBatch(@RequestBody List<CreateProductCommand> commands) {
+        BatchCreateProductResponse response = productService.createProductsInBatch(commands);
+        HttpStatus status = response.failures().isEmpty() ? HttpStatus.OK : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status).body(response);
+    }
+
+    // Producer saturado: falha rápido com 429 e informa quando o cliente deve tentar de novo
+    @ExceptionHandler(ProducerSaturatedException.class)
+    public ResponseEntity<ErrorMessage> handleProducerSaturated(ProducerSaturatedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ErrorMessage(new Date(), e.getMessage(), "/products"));
     }
 }
@@ -0,0 +1,13 @@
+package com.guilherme.course.exceptions;
+
+import lombok.Getter;
+
+@Getter
+public class ProducerSaturatedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public ProducerSaturatedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,69 @@
+package com.guilherme.course.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Métricas do envio de mensagens, expostas em /actuator/metrics.
+ *
+ * - product.producer.send.latency -> tempo entre o send() e o ack do broker, por tópico e partição. Os percentis são
+ *      calculados pelo Micrometer com histogramas HdrHistogram em janelas deslizantes
+ * - product.producer.send.errors  -> envios que falharam, por tópico
+ *
+ * Também decide quais envios bem sucedidos são logados: com milhares de mensagens por segundo, logar todas custa
+ *  uma fatia considerável de CPU. Erros continuam sendo sempre logados por completo.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProducerMetrics {
+    private final MeterRegistry meterRegistry;
+
+    // Loga 1 a cada N envios bem sucedidos (1 = loga todos)
+    @Value("${app.kafka.producer.log.success-sample-every}")
+    private long successLogSampleEvery;
+
+    // Registrar o Timer no MeterRegistry a cada envio custa uma busca por nome + tags, então eles ficam em cache
+    private final Map<TopicPartition, Timer> latencyTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errorCounters = new ConcurrentHashMap<>();
+    private final AtomicLong successes = new AtomicLong();
+
+    public void recordSendLatency(RecordMetadata metadata, long elapsedNanos) {
+        latencyTimers
+                .computeIfAbsent(new TopicPartition(metadata.topic(), metadata.partition()), this::latencyTimer)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSendError(String topic) {
+        errorCounters
+                .computeIfAbsent(topic, t -> Counter.builder("product.producer.send.errors")
+                        .tag("topic", t)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    public boolean shouldLogSuccess() {
+        return successLogSampleEvery <= 1 || successes.incrementAndGet() % successLogSampleEvery == 0;
+    }
+
+    private Timer latencyTimer(TopicPartition topicPartition) {
+        return Timer.builder("product.producer.send.latency")
+                .description("Tempo entre o send() e o ack do broker")
+                .tag("topic", topicPartition.topic())
+                .tag("partition", String.valueOf(topicPartition.partition()))
+                .publishPercentiles(0.5, 0.95, 0.99, 0.999)
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,65 @@
+package com.guilherme.course.producer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pool de KafkaTemplates, cada um com o seu próprio KafkaProducer.
+ *
+ * Por que existe?
+ *  - Um KafkaProducer tem uma única thread de envio (sender) e um único acumulador de batches, protegido por lock
+ *  - Com muitas threads chamando send() ao mesmo tempo, esse lock e essa thread viram o gargalo
+ *
+ * Como funciona:
+ *  - O primeiro template é o próprio template do perfil; os demais usam cópias da mesma ProducerFactory
+ *  - Cada registro é roteado pelo hash da chave (productId), então uma mesma chave sempre usa o mesmo producer e
+ *      a ordenação por chave e a idempotência continuam valendo
+ *  - Com tamanho 1, o comportamento é exatamente o de um KafkaTemplate único
+ */
+@Slf4j
+public class KafkaTemplatePool<K, V> implements DisposableBean {
+    private final List<KafkaTemplate<K, V>> templates;
+    private final List<ProducerFactory<K, V>> copiedFactories = new ArrayList<>();
+
+    public KafkaTemplatePool(KafkaTemplate<K, V> template, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1, but was " + size);
+        }
+
+        List<KafkaTemplate<K, V>> poolTemplates = new ArrayList<>(size);
+        poolTemplates.add(template);
+
+        for (int i = 1; i < size; i++) {
+            // Cada cópia da fábrica cria (e mantém) o seu próprio KafkaProducer, com as mesmas configurações e listeners
+            ProducerFactory<K, V> factory = template.getProducerFactory().copyWithConfigurationOverride(Map.of());
+            copiedFactories.add(factory);
+            poolTemplates.add(new KafkaTemplate<>(factory));
+        }
+
+        this.templates = List.copyOf(poolTemplates);
+        log.info("Kafka template pool created with {} producer(s)", size);
+    }
+
+    public KafkaTemplate<K, V> forKey(K key) {
+        if (templates.size() == 1 || key == null) {
+            return templates.get(0);
+        }
+        return templates.get(Math.floorMod(key.hashCode(), templates.size()));
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    // O template original é fechado pelo próprio Spring; aqui só são fechados os producers das cópias
+    @Override
+    public void destroy() {
+        copiedFactories.forEach(ProducerFactory::reset);
+    }
+}
@@ -0,0 +1,20 @@
+package com.guilherme.course.response;
+
+import java.util.List;
+
+/*
+ * Resultado agregado do envio em lote
+ *  - productIds -> IDs dos produtos cujos eventos foram confirmados pelo broker
+ *  - failures   -> itens que falharam, com a posição (index) na requisição original
+ */
+public record BatchCreateProductResponse(
+        List<String> productIds,
+        List<Failure> failures
+) {
+    public record Failure(
+            int index,
+            String productId,
+            String message
+    ) {
+    }
+}
@@ -0,0 +1,74 @@
+package com.guilherme.course.serialization;
+
+import com.guilherme.course.events.ProductCreatedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodifica o formato binário do ProductCreatedEventSerializer.
+ *
+ * No KafkaProducers só é usado para ler de volta os eventos guardados no spool local (ver ProductEventSpool).
+ * Precisa ser mantido igual ao ProductCreatedEventSerializer e ao ProductCreatedEventDeserializer do KafkaConsumers.
+ */
+public class ProductCreatedEventDeserializer implements Deserializer<ProductCreatedEvent> {
+    private static final int NULL_LENGTH = -1;
+
+    @Override
+    public ProductCreatedEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        return deserialize(topic, ByteBuffer.wrap(data));
+    }
+
+    // Não faz parte do Deserializer do Kafka: usado pelo ProductEventSpool, que lê o evento direto do arquivo mapeado
+    public ProductCreatedEvent deserialize(String topic, ByteBuffer data) {
+        if (data == null) {
+            return null;
+        }
+
+        // Lê em uma cópia, para não mexer na posição do buffer de quem chamou
+        ByteBuffer buffer = data.duplicate();
+
+        try {
+            byte version = buffer.get();
+            if (version != ProductCreatedEventSerializer.FORMAT_VERSION) {
+                throw new SerializationException("Unknown ProductCreatedEvent format version: " + version);
+            }
+
+            String productId = getString(buffer);
+            String title = getString(buffer);
+
+            BigDecimal price = null;
+            int unscaledLength = buffer.getInt();
+            if (unscaledLength != NULL_LENGTH) {
+                byte[] unscaled = new byte[unscaledLength];
+                buffer.get(unscaled);
+                price = new BigDecimal(new BigInteger(unscaled), buffer.getInt());
+            }
+
+            Integer quantity = buffer.get() == 0 ? null : buffer.getInt();
+
+            return new ProductCreatedEvent(productId, title, price, quantity);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+            throw new SerializationException("Malformed binary ProductCreatedEvent", ex);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,116 @@
+package com.guilherme.course.serialization;
+
+import com.guilherme.course.events.ProductCreatedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Serializer binário do ProductCreatedEvent, alternativa ao JsonSerializer.
+ *
+ * Formato (big-endian):
+ *  - 1 byte   -> versão do formato (FORMAT_VERSION)
+ *  - string   -> productId (int com o tamanho em bytes + bytes UTF-8, tamanho -1 = null)
+ *  - string   -> title
+ *  - price    -> int com o tamanho do unscaled value (-1 = null) + bytes do BigInteger + int com a escala
+ *  - quantity -> 1 byte de presença (0 = null, 1 = presente) + int
+ *
+ * O primeiro byte nunca colide com um JSON (que começa com '{'), por isso o consumer consegue decodificar os dois
+ * formatos durante a migração. Esse formato precisa ser mantido igual ao ProductCreatedEventDeserializer do KafkaConsumers.
+ */
+public class ProductCreatedEventSerializer implements Serializer<ProductCreatedEvent> {
+    public static final byte FORMAT_VERSION = 1;
+
+    private static final int NULL_LENGTH = -1;
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    // O KafkaProducer serializa na thread que chamou o send(), então cada thread reaproveita o seu próprio buffer/encoder
+    private static final ThreadLocal<EncoderState> ENCODER_STATE = ThreadLocal.withInitial(EncoderState::new);
+
+    @Override
+    public byte[] serialize(String topic, ProductCreatedEvent event) {
+        if (event == null) {
+            return null;
+        }
+
+        BigDecimal price = event.getPrice();
+        byte[] unscaledPrice = price != null ? price.unscaledValue().toByteArray() : null;
+
+        EncoderState state = ENCODER_STATE.get();
+        ByteBuffer buffer = state.buffer(maxSize(event, unscaledPrice));
+
+        buffer.put(FORMAT_VERSION);
+        state.putString(event.getProductId());
+        state.putString(event.getTitle());
+
+        if (unscaledPrice == null) {
+            buffer.putInt(NULL_LENGTH);
+        } else {
+            buffer.putInt(unscaledPrice.length);
+            buffer.put(unscaledPrice);
+            buffer.putInt(price.scale());
+        }
+
+        if (event.getQuantity() == null) {
+            buffer.put((byte) 0);
+        } else {
+            buffer.put((byte) 1);
+            buffer.putInt(event.getQuantity());
+        }
+
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    // Limite superior do tamanho serializado: um char UTF-16 ocupa no máximo 3 bytes em UTF-8
+    private static int maxSize(ProductCreatedEvent event, byte[] unscaledPrice) {
+        return 1
+                + Integer.BYTES + maxUtf8Length(event.getProductId())
+                + Integer.BYTES + maxUtf8Length(event.getTitle())
+                + Integer.BYTES + (unscaledPrice != null ? unscaledPrice.length + Integer.BYTES : 0)
+                + 1 + Integer.BYTES;
+    }
+
+    private static int maxUtf8Length(String value) {
+        return value != null ? value.length() * 3 : 0;
+    }
+
+    private static final class EncoderState {
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        ByteBuffer buffer(int requiredCapacity) {
+            if (buffer.capacity() < requiredCapacity) {
+                buffer = ByteBuffer.allocate(Math.max(requiredCapacity, buffer.capacity() * 2));
+            }
+            buffer.clear();
+            return buffer;
+        }
+
+        // Codifica direto no buffer, reservando 4 bytes para o tamanho e preenchendo depois
+        void putString(String value) {
+            if (value == null) {
+                buffer.putInt(NULL_LENGTH);
+                return;
+            }
+
+            int lengthPosition = buffer.position();
+            buffer.position(lengthPosition + Integer.BYTES);
+
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(value), buffer, true);
+            if (!result.isUnderflow()) {
+                throw new SerializationException("Could not encode string as UTF-8: " + result);
+            }
+            encoder.flush(buffer);
+
+            buffer.putInt(lengthPosition, buffer.position() - lengthPosition - Integer.BYTES);
+        }
+    }
+}
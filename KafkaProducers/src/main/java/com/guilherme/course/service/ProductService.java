@@ -1,16 +1,30 @@
 package com.guilherme.course.service;
 
+import com.guilherme.course.admission.ProducerAdmissionController;
 import com.guilherme.course.command.CreateProductCommand;
 import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.exceptions.ProducerSaturatedException;
+import com.guilherme.course.metrics.ProducerMetrics;
+import com.guilherme.course.producer.KafkaTemplatePool;
+import com.guilherme.course.response.BatchCreateProductResponse;
+import com.guilherme.course.spool.ProductEventSpool;
+import com.guilherme.course.util.ConstantUtil;
+import com.guilherme.course.util.MessageIdGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @Service
@@ -19,39 +33,43 @@ public class ProductService {
     // Kafka template -> wrapper do Kafka Producer para mandar mensagens para os tópicos
     // É necessário especificar o tipo da chave e valor da mensagem:
     //      KafkaTemplate<TipoDaChave, TipoDoValor>
-    private final KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate;
+    // Cada perfil é um pool de KafkaTemplates, e o template de cada envio é escolhido pela chave (productId)
+    // Perfil de latência: usado quando o cliente espera o ack do broker (envio síncrono)
+    private final KafkaTemplatePool<String, ProductCreatedEvent> kafkaTemplatePool;
+
+    // Perfil de throughput: batches maiores e comprimidos, usado quando o que importa é o volume e não a latência de
+    //  cada envio: no async ninguém espera o ack, e no batch a resposta espera os acks de todos os registros juntos
+    @Qualifier("throughputKafkaTemplatePool")
+    private final KafkaTemplatePool<String, ProductCreatedEvent> throughputKafkaTemplatePool;
+
+    private final ProducerAdmissionController admissionController;
+    private final ProducerMetrics producerMetrics;
+    private final ProductEventSpool spool;
 
     public String createProductAsynchronously(CreateProductCommand command) {
         String productId = UUID.randomUUID().toString();
 
         // Lógica para persistir Product
 
-        ProductCreatedEvent productCreatedEvent = new ProductCreatedEvent(
-                productId,
-                command.title(),
-                command.price(),
-                command.quantity()
-        );
-
-        ProducerRecord<String, ProductCreatedEvent> producerRecord = new ProducerRecord<>(
-                "product-created-events",
-                productId,
-                productCreatedEvent
-        );
+        ProducerRecord<String, ProductCreatedEvent> producerRecord = buildProducerRecord(productId, command);
 
-        // Dessa forma que envia Headers na mensagem
-        producerRecord.headers().add("messageId", UUID.randomUUID().toString().getBytes());
+        // Ainda há eventos esperando o replay do spool, então o cluster provavelmente continua fora: este também vai
+        //  para o spool, sem ocupar o buffer do producer até o delivery.timeout.ms (não é garantia de ordem, ver ProductEventSpool)
+        if (spool.hasPending()) {
+            spool.append(producerRecord);
+            return productId;
+        }
 
         // Faz o envio de forma assíncrona
         // SendResult<TipoDaChave, TipoDoValor> -> classe que encapsula resultado do envio de uma mensagem
-        CompletableFuture<SendResult<String, ProductCreatedEvent>> future = kafkaTemplate.send(producerRecord);
+        CompletableFuture<SendResult<String, ProductCreatedEvent>> future = send(throughputKafkaTemplatePool, producerRecord);
 
         // Callback que será executado quando a operação de cima finalizar
         future.whenComplete((result, exception) -> {
             if (exception != null) {    // Operação deu falha
-                log.error("Failed to send message: ", exception);
+                spoolFailedRecord(productId, producerRecord, exception);
             } else {    // Operação bem sucedida
-                logMessageSentSuccessfully(result);
+                logMessageSentSuccessfully(productId, result);
             }
         });
 
@@ -59,16 +77,131 @@ public class ProductService {
         // Torna a operação síncrona
         //future.join();
 
-        logCreatedProduct(productId);
-
         return productId;
     }
 
-    public String createProductSynchronously(CreateProductCommand command) throws Exception {
+    /*
+     * Continua sendo síncrono do ponto de vista do cliente HTTP (a resposta só sai depois do ack do broker), mas
+     *  nenhuma thread fica bloqueada esperando:
+     *      - Antes: .get() no future prendia a thread do Tomcat até o ack (acks=all)
+     *      - Agora: o CompletableFuture é devolvido para o controller e completado pelo callback do producer
+     *
+     * Cuidado: o callback roda na thread de I/O do producer, então não pode ter nada pesado ou bloqueante nele
+     */
+    public CompletableFuture<String> createProductSynchronously(CreateProductCommand command) {
         String productId = UUID.randomUUID().toString();
 
         // Lógica para persistir Product
 
+        return send(kafkaTemplatePool, buildProducerRecord(productId, command)).thenApply(result -> {
+            logMessageSentSuccessfully(productId, result);
+            return productId;
+        });
+    }
+
+    /*
+     * Envio em lote com pipelining:
+     *  1. Todos os registros são entregues ao KafkaTemplate sem esperar a confirmação de cada um. O producer agrupa
+     *      os registros em batches por partição e mantém várias requisições em voo ao mesmo tempo
+     *  2. Só depois que tudo foi enviado é que os futures são aguardados, um a um, para montar o resultado
+     *
+     * Dessa forma, o custo de rede de N registros fica próximo do custo de poucos batches, ao invés de N round trips
+     */
+    public BatchCreateProductResponse createProductsInBatch(List<CreateProductCommand> commands) {
+        List<String> productIds = new ArrayList<>(commands.size());
+        List<CompletableFuture<SendResult<String, ProductCreatedEvent>>> futures = new ArrayList<>(commands.size());
+        int rejected = 0;
+
+        for (CreateProductCommand command : commands) {
+            String productId = UUID.randomUUID().toString();
+            productIds.add(productId);
+
+            // Se o producer estiver saturado, apenas o item é recusado e o restante do lote continua
+            try {
+                futures.add(send(throughputKafkaTemplatePool, buildProducerRecord(productId, command)));
+            } catch (ProducerSaturatedException ex) {
+                futures.add(CompletableFuture.failedFuture(ex));
+                rejected++;
+            }
+        }
+
+        // Nenhum item foi aceito: devolve 429 para o cliente tentar o lote inteiro de novo mais tarde
+        if (!commands.isEmpty() && rejected == commands.size()) {
+            throw (ProducerSaturatedException) futures.get(0).exceptionNow();
+        }
+
+        List<String> sentProductIds = new ArrayList<>(commands.size());
+        List<BatchCreateProductResponse.Failure> failures = new ArrayList<>();
+
+        for (int i = 0; i < futures.size(); i++) {
+            String productId = productIds.get(i);
+
+            try {
+                futures.get(i).join();
+                sentProductIds.add(productId);
+            } catch (CompletionException | CancellationException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                log.error("Failed to send message for productId {}: ", productId, cause);
+                failures.add(new BatchCreateProductResponse.Failure(i, productId, cause.getMessage()));
+            }
+        }
+
+        log.info("Batch of {} products sent: {} succeeded, {} failed", commands.size(), sentProductIds.size(), failures.size());
+
+        return new BatchCreateProductResponse(sentProductIds, failures);
+    }
+
+    /*
+     * Todos os envios passam por aqui:
+     *  1. Reserva uma permissão no controle de admissão (lança ProducerSaturatedException se não houver)
+     *  2. Envia pelo KafkaTemplate do pool do perfil escolhido, de acordo com a chave do registro
+     *  3. Libera a permissão quando o envio terminar, com sucesso ou falha
+     *  4. Registra a latência até o ack (ou o erro) nas métricas
+     *
+     * O send pode falhar antes mesmo de devolver o future (ex.: erro de serialização ou timeout esperando metadata)
+     * Nesse caso a falha também é devolvida no future, para ser tratada igual às demais
+     */
+    private CompletableFuture<SendResult<String, ProductCreatedEvent>> send(
+            KafkaTemplatePool<String, ProductCreatedEvent> templatePool,
+            ProducerRecord<String, ProductCreatedEvent> producerRecord
+    ) {
+        ProducerAdmissionController.Permit permit = admissionController.tryAcquire(estimateSize(producerRecord));
+        long startNanos = System.nanoTime();
+
+        CompletableFuture<SendResult<String, ProductCreatedEvent>> future;
+        try {
+            future = templatePool.forKey(producerRecord.key()).send(producerRecord);
+        } catch (Exception ex) {
+            permit.release();
+            producerMetrics.recordSendError(producerRecord.topic());
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        future.whenComplete((result, exception) -> {
+            permit.release();
+            if (exception != null) {
+                producerMetrics.recordSendError(producerRecord.topic());
+            } else {
+                producerMetrics.recordSendLatency(result.getRecordMetadata(), System.nanoTime() - startNanos);
+            }
+        });
+        return future;
+    }
+
+    // Estimativa barata do tamanho do registro, sem serializar: chave + campos do evento + headers + overhead fixo
+    private static int estimateSize(ProducerRecord<String, ProductCreatedEvent> producerRecord) {
+        ProductCreatedEvent event = producerRecord.value();
+        int size = 64 + producerRecord.key().length() + event.getProductId().length();
+        if (event.getTitle() != null) {
+            size += event.getTitle().length();
+        }
+        for (Header header : producerRecord.headers()) {
+            size += header.key().length() + header.value().length;
+        }
+        return size;
+    }
+
+    private ProducerRecord<String, ProductCreatedEvent> buildProducerRecord(String productId, CreateProductCommand command) {
         ProductCreatedEvent productCreatedEvent = new ProductCreatedEvent(
                 productId,
                 command.title(),
@@ -76,29 +209,44 @@ public class ProductService {
                 command.quantity()
         );
 
-        // Faz o envio de forma síncrona
-        // .get() é necessário para esperar o CompletableFuture finalizar de ser executado
-        SendResult<String, ProductCreatedEvent> result = kafkaTemplate
-                .send("product-created-events", productId, productCreatedEvent)
-                .get();
-
-        log.info("Offset: {}", result.getRecordMetadata().offset());
-        log.info("Timestamp: {}", result.getRecordMetadata().timestamp());
-        log.info("Serialized Key Size: {}", result.getRecordMetadata().serializedKeySize());
-        log.info("Serialized Value Size: {}", result.getRecordMetadata().serializedValueSize());
-        log.info("Topic Partition: {}\n", result.getRecordMetadata().partition());
+        ProducerRecord<String, ProductCreatedEvent> producerRecord = new ProducerRecord<>(
+                ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC,
+                productId,
+                productCreatedEvent
+        );
 
-        logMessageSentSuccessfully(result);
-        logCreatedProduct(productId);
+        // Dessa forma que envia Headers na mensagem
+        // O messageId vai como 16 bytes binários ordenados pelo tempo (ver MessageIdGenerator)
+        producerRecord.headers().add(ConstantUtil.MESSAGE_ID_HEADER, MessageIdGenerator.nextId());
 
-        return productId;
+        return producerRecord;
     }
 
-    private void logMessageSentSuccessfully(SendResult<String, ProductCreatedEvent> result) {
-        log.info("Message sent successfully: {}", result.getRecordMetadata());
+    // O cliente já recebeu o productId, então o registro que o producer não conseguiu entregar vai para o spool local
+    private void spoolFailedRecord(String productId, ProducerRecord<String, ProductCreatedEvent> producerRecord, Throwable exception) {
+        if (!spool.isEnabled()) {
+            log.error("Failed to send message: ", exception);
+            return;
+        }
+
+        try {
+            spool.append(producerRecord);
+            log.warn("Failed to send message for productId {}, spooled for replay: {}", productId, exception.getMessage());
+        } catch (RuntimeException ex) {
+            log.error("Failed to send message for productId {} and could not spool it: ", productId, exception);
+            log.error("Spool error: ", ex);
+        }
     }
 
-    private void logCreatedProduct(String productId) {
-        log.info("Product created with ID: {}", productId);
+    // Logado por amostragem (ver ProducerMetrics.shouldLogSuccess). A latência de todos os envios fica nas métricas
+    private void logMessageSentSuccessfully(String productId, SendResult<String, ProductCreatedEvent> result) {
+        if (!producerMetrics.shouldLogSuccess()) {
+            return;
+        }
+
+        RecordMetadata metadata = result.getRecordMetadata();
+        log.info("Product created with ID: {}. Message sent successfully to {}-{}@{} (timestamp: {}, key size: {}, value size: {})",
+                productId, metadata.topic(), metadata.partition(), metadata.offset(), metadata.timestamp(),
+                metadata.serializedKeySize(), metadata.serializedValueSize());
     }
 }
@@ -0,0 +1,396 @@
+package com.guilherme.course.spool;
+
+import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.serialization.ProductCreatedEventDeserializer;
+import com.guilherme.course.serialization.ProductCreatedEventSerializer;
+import com.guilherme.course.util.ConstantUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Spool local (append-only) para os eventos do envio assíncrono que o producer não conseguiu entregar.
+ *
+ * Por que existe?
+ *  - O /products/async devolve o productId antes do ack. Se o cluster estiver fora, o registro fica na memória do
+ *      producer até o delivery.timeout.ms e depois é perdido, só com uma linha de log
+ *  - Com o spool, o registro vai para o disco e é reenviado pelo ProductEventSpoolReplayer quando o cluster voltar.
+ *      Enquanto houver registros no spool, os novos envios assíncronos também vão direto para ele, ao invés de se
+ *      acumularem no buffer de um producer que acabou de falhar
+ *
+ * Ordem: o replay segue a ordem de gravação no spool, mas não há garantia de ordem em relação aos registros que o
+ *  producer entregou direto. Uma falha só chega ao spool depois do delivery.timeout.ms, quando registros mais novos
+ *  já podem ter sido confirmados, e o hasPending() não é atômico com o append (o replay pode esvaziar o spool entre
+ *  os dois). Não é um problema para o ProductCreatedEvent: cada productId é uma chave nova, com um único evento.
+ *
+ * Armazenamento:
+ *  - Arquivos de segmento de tamanho fixo (segment-NNN.spool), mapeados em memória. Escrever um registro é só uma
+ *      cópia para o page cache, sem syscall, e nada fica acumulado no heap
+ *  - Cada frame: int com o tamanho do payload + int com o CRC32C do payload + payload
+ *      payload = chave (int com o tamanho + UTF-8) + messageId (int com o tamanho + bytes, -1 = null)
+ *                + evento no formato binário do ProductCreatedEventSerializer
+ *  - Um tamanho 0 marca o fim dos dados escritos no segmento (o arquivo é criado zerado)
+ *  - O arquivo `checkpoint` guarda até onde o replay já foi confirmado pelo broker (segmento + posição)
+ *
+ * Durabilidade: os dados sobrevivem a um crash do processo (o page cache é do sistema operacional), mas só vão
+ *  de fato para o disco quando um segmento fecha ou no shutdown. Um frame escrito pela metade é descartado pelo CRC
+ *  na próxima inicialização.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductEventSpool {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int FRAME_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int CHECKPOINT_SIZE = 3 * Long.BYTES;
+    private static final long CHECKPOINT_MAGIC = 0x53504F4F4C43504BL;
+    private static final int NULL_LENGTH = -1;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.kafka.producer.spool.enabled}")
+    private boolean enabled;
+
+    @Value("${app.kafka.producer.spool.directory}")
+    private String directory;
+
+    @Value("${app.kafka.producer.spool.segment-size-bytes}")
+    private int segmentSize;
+
+    private final ProductCreatedEventSerializer eventSerializer = new ProductCreatedEventSerializer();
+    private final ProductCreatedEventDeserializer eventDeserializer = new ProductCreatedEventDeserializer();
+
+    // Quantidade de registros no spool que ainda não foram confirmados pelo broker
+    private final AtomicLong depth = new AtomicLong();
+    private Counter appendedCounter;
+
+    // Estado dos arquivos, protegido pelo lock do próprio objeto
+    private Path directoryPath;
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private long readSegment;
+    private int readPosition;
+    private MappedByteBuffer readBuffer;
+    private MappedByteBuffer checkpointBuffer;
+
+    @PostConstruct
+    void init() throws IOException {
+        Gauge.builder("product.producer.spool.depth", depth, AtomicLong::get)
+                .description("Async product events waiting in the local spool to be replayed to Kafka")
+                .register(meterRegistry);
+        appendedCounter = Counter.builder("product.producer.spool.appended")
+                .description("Async product events written to the local spool")
+                .register(meterRegistry);
+
+        if (!enabled) {
+            return;
+        }
+
+        directoryPath = Path.of(directory);
+        Files.createDirectories(directoryPath);
+        checkpointBuffer = map(directoryPath.resolve(CHECKPOINT_FILE), CHECKPOINT_SIZE);
+        recover();
+
+        log.info("Product event spool opened at {} with {} pending record(s)", directoryPath.toAbsolutePath(), depth.get());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Enquanto houver registros pendentes, o cluster provavelmente continua fora: os novos envios assíncronos vão para o spool
+    public boolean hasPending() {
+        return enabled && depth.get() > 0;
+    }
+
+    public long depth() {
+        return depth.get();
+    }
+
+    public synchronized void append(ProducerRecord<String, ProductCreatedEvent> producerRecord) {
+        if (!enabled) {
+            throw new IllegalStateException("Product event spool is disabled");
+        }
+
+        byte[] payload = encode(producerRecord);
+        int frameSize = FRAME_HEADER_SIZE + payload.length;
+        if (frameSize > segmentSize) {
+            throw new IllegalArgumentException("Record of " + frameSize + " bytes does not fit in a spool segment of " + segmentSize + " bytes");
+        }
+
+        if (writeBuffer.remaining() < frameSize) {
+            rollSegment();
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        // O tamanho é escrito por último: um frame só "existe" depois que o payload inteiro já está no segmento
+        int position = writeBuffer.position();
+        writeBuffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        writeBuffer.put(position + FRAME_HEADER_SIZE, payload);
+        writeBuffer.putInt(position, payload.length);
+        writeBuffer.position(position + frameSize);
+
+        depth.incrementAndGet();
+        appendedCounter.increment();
+    }
+
+    /*
+     * Lê até `maxRecords` registros a partir do último checkpoint, sem avançá-lo
+     * O checkpoint só avança no commit, depois que o broker confirmou o lote. Se o reenvio falhar, o mesmo lote é
+     *  lido de novo na próxima tentativa
+     */
+    public synchronized ReplayBatch peek(int maxRecords) {
+        if (!enabled) {
+            return ReplayBatch.EMPTY;
+        }
+
+        while (true) {
+            List<SpooledRecord> records = new ArrayList<>();
+            int position = readPosition;
+
+            while (records.size() < maxRecords) {
+                int length = frameLength(readBuffer, position);
+                if (length < 0) {
+                    break;
+                }
+                records.add(decode(readBuffer.slice(position + FRAME_HEADER_SIZE, length)));
+                position += FRAME_HEADER_SIZE + length;
+            }
+
+            // Segmento lido até o fim e já existe um mais novo: o antigo não tem mais nada pendente
+            if (records.isEmpty() && readSegment < writeSegment) {
+                moveToNextSegment();
+                continue;
+            }
+
+            return new ReplayBatch(records, readSegment, position);
+        }
+    }
+
+    public synchronized void commit(ReplayBatch batch) {
+        if (batch.records().isEmpty()) {
+            return;
+        }
+        if (batch.segment() != readSegment || batch.endPosition() < readPosition) {
+            throw new IllegalStateException("Replay batch does not match the current spool position");
+        }
+
+        readPosition = batch.endPosition();
+        writeCheckpoint();
+        depth.addAndGet(-batch.records().size());
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        if (!enabled) {
+            return;
+        }
+        writeBuffer.force();
+        checkpointBuffer.force();
+    }
+
+    /*
+     * Reabre o spool depois de um restart:
+     *  1. Lê o checkpoint (ou começa do primeiro segmento, se ele não existir ou estiver inválido)
+     *  2. Apaga os segmentos que já foram totalmente reenviados
+     *  3. Percorre os frames válidos a partir do checkpoint, para saber a profundidade e onde continuar escrevendo
+     */
+    private void recover() throws IOException {
+        List<Long> segments = listSegments();
+        if (segments.isEmpty()) {
+            writeSegment = 0;
+            writeBuffer = mapSegment(0);
+            readSegment = 0;
+            readPosition = 0;
+            readBuffer = writeBuffer;
+            writeCheckpoint();
+            return;
+        }
+
+        long checkpointSegment = checkpointBuffer.getLong(0);
+        long checkpointPosition = checkpointBuffer.getLong(Long.BYTES);
+        boolean validCheckpoint = checkpointBuffer.getLong(2 * Long.BYTES) == checksum(checkpointSegment, checkpointPosition)
+                && segments.contains(checkpointSegment);
+
+        readSegment = validCheckpoint ? checkpointSegment : segments.get(0);
+        readPosition = validCheckpoint ? (int) checkpointPosition : 0;
+        writeSegment = segments.get(segments.size() - 1);
+
+        for (long segment : segments) {
+            if (segment < readSegment) {
+                deleteSegment(segment);
+            }
+        }
+
+        long pending = 0;
+        for (long segment = readSegment; segment <= writeSegment; segment++) {
+            MappedByteBuffer buffer = mapSegment(segment);
+            int position = segment == readSegment ? readPosition : 0;
+            int length;
+            while ((length = frameLength(buffer, position)) >= 0) {
+                position += FRAME_HEADER_SIZE + length;
+                pending++;
+            }
+
+            if (segment == readSegment) {
+                readBuffer = buffer;
+            }
+            if (segment == writeSegment) {
+                // Descarta um eventual frame escrito pela metade, para não ser confundido com dados válidos depois
+                if (position + Integer.BYTES <= buffer.limit() && buffer.getInt(position) != 0) {
+                    buffer.put(position, new byte[buffer.limit() - position]);
+                }
+                buffer.position(position);
+                writeBuffer = buffer;
+            }
+        }
+
+        depth.set(pending);
+        writeCheckpoint();
+    }
+
+    private void rollSegment() {
+        writeBuffer.force();
+        writeSegment++;
+        writeBuffer = mapSegment(writeSegment);
+    }
+
+    private void moveToNextSegment() {
+        long finishedSegment = readSegment;
+        readSegment++;
+        readPosition = 0;
+        readBuffer = readSegment == writeSegment ? writeBuffer : mapSegment(readSegment);
+        writeCheckpoint();
+        deleteSegment(finishedSegment);
+    }
+
+    private void writeCheckpoint() {
+        checkpointBuffer.putLong(0, readSegment);
+        checkpointBuffer.putLong(Long.BYTES, readPosition);
+        checkpointBuffer.putLong(2 * Long.BYTES, checksum(readSegment, readPosition));
+    }
+
+    private static long checksum(long segment, long position) {
+        return CHECKPOINT_MAGIC ^ (segment * 31 + position);
+    }
+
+    // Tamanho do payload do frame em `position`, ou -1 se ali não houver um frame completo e íntegro
+    private static int frameLength(ByteBuffer buffer, int position) {
+        if (position + FRAME_HEADER_SIZE > buffer.limit()) {
+            return -1;
+        }
+
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.limit() - position - FRAME_HEADER_SIZE) {
+            return -1;
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(position + FRAME_HEADER_SIZE, length));
+        return (int) crc.getValue() == buffer.getInt(position + Integer.BYTES) ? length : -1;
+    }
+
+    private byte[] encode(ProducerRecord<String, ProductCreatedEvent> producerRecord) {
+        byte[] key = producerRecord.key().getBytes(StandardCharsets.UTF_8);
+        Header messageIdHeader = producerRecord.headers().lastHeader(ConstantUtil.MESSAGE_ID_HEADER);
+        byte[] messageId = messageIdHeader != null ? messageIdHeader.value() : null;
+        byte[] event = eventSerializer.serialize(producerRecord.topic(), producerRecord.value());
+
+        ByteBuffer payload = ByteBuffer.allocate(Integer.BYTES + key.length
+                + Integer.BYTES + (messageId != null ? messageId.length : 0)
+                + event.length);
+        payload.putInt(key.length).put(key);
+        if (messageId == null) {
+            payload.putInt(NULL_LENGTH);
+        } else {
+            payload.putInt(messageId.length).put(messageId);
+        }
+        payload.put(event);
+        return payload.array();
+    }
+
+    private SpooledRecord decode(ByteBuffer payload) {
+        byte[] key = new byte[payload.getInt()];
+        payload.get(key);
+
+        byte[] messageId = null;
+        int messageIdLength = payload.getInt();
+        if (messageIdLength != NULL_LENGTH) {
+            messageId = new byte[messageIdLength];
+            payload.get(messageId);
+        }
+
+        ProductCreatedEvent event = eventDeserializer.deserialize(ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC, payload.slice());
+        return new SpooledRecord(new String(key, StandardCharsets.UTF_8), messageId, event);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directoryPath)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directoryPath.resolve(SEGMENT_PREFIX + String.format("%020d", segment) + SEGMENT_SUFFIX);
+    }
+
+    private MappedByteBuffer mapSegment(long segment) {
+        try {
+            return map(segmentPath(segment), segmentSize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not map spool segment " + segment, ex);
+        }
+    }
+
+    // O mapeamento continua válido depois que o canal é fechado. Se o arquivo for menor que `size`, ele é estendido com zeros
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    // O mapeamento do segmento só é liberado pelo GC, mas no Linux o arquivo pode ser apagado mesmo mapeado
+    private void deleteSegment(long segment) {
+        try {
+            Files.deleteIfExists(segmentPath(segment));
+        } catch (IOException ex) {
+            log.warn("Could not delete replayed spool segment {}, it will be deleted on the next startup", segment, ex);
+        }
+    }
+
+    // Lote lido do spool, com a posição (no segmento) logo depois do último registro
+    public record ReplayBatch(List<SpooledRecord> records, long segment, int endPosition) {
+        static final ReplayBatch EMPTY = new ReplayBatch(List.of(), -1, 0);
+    }
+}
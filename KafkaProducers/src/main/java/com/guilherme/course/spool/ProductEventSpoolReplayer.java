@@ -0,0 +1,144 @@
+package com.guilherme.course.spool;
+
+import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.producer.KafkaTemplatePool;
+import com.guilherme.course.util.ConstantUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Thread em background que reenvia para o Kafka os registros guardados no ProductEventSpool, na ordem em que foram
+ *  gravados (ver a seção "Ordem" do ProductEventSpool: isso não ordena o spool em relação aos envios diretos).
+ *
+ * Funcionamento:
+ *  1. Lê um lote a partir do checkpoint do spool
+ *  2. Envia o lote inteiro pelo perfil de throughput (pipelined, como no /products/batch) e espera todos os acks
+ *  3. Se todos foram confirmados, avança o checkpoint. Se algum falhou, espera o backoff e reenvia o mesmo lote
+ *
+ * Reenviar o lote inteiro pode duplicar registros que já tinham sido aceitos, mas cada registro mantém o messageId
+ *  original, então o consumer descarta as duplicatas (ver ProcessedEventEntity no KafkaConsumers).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductEventSpoolReplayer {
+    private static final long IDLE_POLL_MS = 100;
+
+    private final ProductEventSpool spool;
+
+    @Qualifier("throughputKafkaTemplatePool")
+    private final KafkaTemplatePool<String, ProductCreatedEvent> throughputKafkaTemplatePool;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.kafka.producer.spool.replay-batch-size}")
+    private int replayBatchSize;
+
+    @Value("${app.kafka.producer.spool.replay-backoff-ms}")
+    private long replayBackoffMs;
+
+    private Counter replayedCounter;
+    private volatile boolean running;
+    private Thread replayThread;
+
+    @PostConstruct
+    void start() {
+        if (!spool.isEnabled()) {
+            return;
+        }
+
+        replayedCounter = Counter.builder("product.producer.spool.replayed")
+                .description("Spooled product events confirmed by Kafka after replay")
+                .register(meterRegistry);
+
+        running = true;
+        replayThread = Thread.ofPlatform().name("product-spool-replayer").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (replayThread != null) {
+            replayThread.interrupt();
+            replayThread.join(5000);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                ProductEventSpool.ReplayBatch batch = spool.peek(replayBatchSize);
+                if (batch.records().isEmpty()) {
+                    Thread.sleep(IDLE_POLL_MS);
+                    continue;
+                }
+
+                if (replay(batch.records())) {
+                    spool.commit(batch);
+                    replayedCounter.increment(batch.records().size());
+                    log.info("Replayed {} spooled product event(s), {} still pending", batch.records().size(), spool.depth());
+                } else {
+                    Thread.sleep(replayBackoffMs);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                log.error("Unexpected error while replaying the product event spool: ", ex);
+                try {
+                    Thread.sleep(replayBackoffMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean replay(List<SpooledRecord> records) {
+        List<CompletableFuture<SendResult<String, ProductCreatedEvent>>> futures = new ArrayList<>(records.size());
+
+        try {
+            for (SpooledRecord spooledRecord : records) {
+                ProducerRecord<String, ProductCreatedEvent> producerRecord = toProducerRecord(spooledRecord);
+                futures.add(throughputKafkaTemplatePool.forKey(producerRecord.key()).send(producerRecord));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            return true;
+        } catch (CompletionException ex) {
+            log.warn("Kafka still unavailable, retrying {} spooled product event(s) in {}ms: {}",
+                    records.size(), replayBackoffMs, ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage());
+            return false;
+        } catch (RuntimeException ex) {
+            log.warn("Could not send spooled product events, retrying in {}ms: {}", replayBackoffMs, ex.getMessage());
+            return false;
+        }
+    }
+
+    private static ProducerRecord<String, ProductCreatedEvent> toProducerRecord(SpooledRecord spooledRecord) {
+        ProducerRecord<String, ProductCreatedEvent> producerRecord = new ProducerRecord<>(
+                ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC,
+                spooledRecord.key(),
+                spooledRecord.event()
+        );
+
+        if (spooledRecord.messageId() != null) {
+            producerRecord.headers().add(ConstantUtil.MESSAGE_ID_HEADER, spooledRecord.messageId());
+        }
+        return producerRecord;
+    }
+}
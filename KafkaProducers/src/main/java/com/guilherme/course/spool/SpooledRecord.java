@@ -0,0 +1,7 @@
+package com.guilherme.course.spool;
+
+import com.guilherme.course.events.ProductCreatedEvent;
+
+// Registro lido de volta do spool: chave, messageId original (para o consumer deduplicar) e o evento
+public record SpooledRecord(String key, byte[] messageId, ProductCreatedEvent event) {
+}
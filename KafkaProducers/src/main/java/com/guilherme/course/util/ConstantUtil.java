@@ -0,0 +1,10 @@
+package com.guilherme.course.util;
+
+public class ConstantUtil {
+    private ConstantUtil() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static final String PRODUCT_CREATED_EVENTS_TOPIC = "product-created-events";
+    public static final String MESSAGE_ID_HEADER = "messageId";
+}
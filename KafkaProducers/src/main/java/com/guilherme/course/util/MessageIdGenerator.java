@@ -0,0 +1,56 @@
+package com.guilherme.course.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gera o messageId das mensagens como um UUID versão 7 (RFC 9562) em 16 bytes binários.
+ *
+ * Por que não UUID.randomUUID().toString()?
+ *  - São 36 bytes de texto em todo header, contra 16 bytes binários
+ *  - UUIDs aleatórios espalham as inserções pelo índice único do consumer; no v7 os primeiros 48 bits são o
+ *      timestamp em milissegundos, então os IDs novos sempre caem no final do índice
+ *
+ * Layout (big-endian):
+ *  - 48 bits -> timestamp Unix em milissegundos
+ *  - 4 bits  -> versão (7)
+ *  - 12 bits -> sequência dentro do mesmo milissegundo (garante ordem mesmo com vários IDs no mesmo ms)
+ *  - 2 bits  -> variante (10)
+ *  - 62 bits -> aleatórios
+ *
+ * Não usa locks: o timestamp + sequência fica num único AtomicLong atualizado com CAS.
+ */
+public class MessageIdGenerator {
+    private static final int SEQUENCE_BITS = 12;
+
+    // (timestamp << 12) | sequência do último ID gerado
+    private static final AtomicLong LAST_TIMESTAMP_AND_SEQUENCE = new AtomicLong();
+
+    private MessageIdGenerator() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static byte[] nextId() {
+        long timestampAndSequence = nextTimestampAndSequence();
+
+        long mostSignificantBits = (timestampAndSequence >>> SEQUENCE_BITS) << 16
+                | 0x7000L
+                | (timestampAndSequence & 0xFFFL);
+        long leastSignificantBits = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+
+        return ByteBuffer.allocate(16)
+                .putLong(mostSignificantBits)
+                .putLong(leastSignificantBits)
+                .array();
+    }
+
+    /*
+     * Se o relógio andou, começa a sequência do zero no novo milissegundo. Se não andou (ou voltou), só incrementa a
+     *  sequência; quando ela estoura, o valor passa naturalmente para o "próximo milissegundo", mantendo a ordem.
+     */
+    private static long nextTimestampAndSequence() {
+        long now = System.currentTimeMillis() << SEQUENCE_BITS;
+        return LAST_TIMESTAMP_AND_SEQUENCE.updateAndGet(last -> Math.max(now, last + 1));
+    }
+}
@@ -0,0 +1,101 @@
+package com.guilherme.course.serialization;
+
+import com.guilherme.course.events.ProductCreatedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ * O formato binário é decodificado em dois módulos (aqui e no ProductCreatedEventDeserializer do KafkaConsumers).
+ *  Os bytes esperados abaixo são os mesmos do ProductCreatedEventDeserializerTests do KafkaConsumers: se o formato
+ *  mudar só de um lado, um dos dois testes quebra
+ */
+class ProductCreatedEventSerializerTests {
+    static final String TOPIC = "product-created-events-topic";
+
+    // ProductCreatedEvent("p-1", "Café", 12.34, 5)
+    static final String EVENT_HEX = "01"
+            + "00000003" + "702d31"
+            + "00000005" + "436166c3a9"
+            + "00000002" + "04d2" + "00000002"
+            + "01" + "00000005";
+
+    // ProductCreatedEvent(null, null, null, null)
+    static final String NULL_FIELDS_HEX = "01" + "ffffffff" + "ffffffff" + "ffffffff" + "00";
+
+    private final ProductCreatedEventSerializer serializer = new ProductCreatedEventSerializer();
+    private final ProductCreatedEventDeserializer deserializer = new ProductCreatedEventDeserializer();
+
+    @Test
+    void serializesToTheDocumentedFormat() {
+        ProductCreatedEvent event = new ProductCreatedEvent("p-1", "Café", new BigDecimal("12.34"), 5);
+
+        assertThat(serializer.serialize(TOPIC, event)).isEqualTo(HexFormat.of().parseHex(EVENT_HEX));
+    }
+
+    @Test
+    void serializesNullFields() {
+        ProductCreatedEvent event = new ProductCreatedEvent(null, null, null, null);
+
+        byte[] data = serializer.serialize(TOPIC, event);
+
+        assertThat(data).isEqualTo(HexFormat.of().parseHex(NULL_FIELDS_HEX));
+        assertThat(deserializer.deserialize(TOPIC, data)).isEqualTo(event);
+    }
+
+    @Test
+    void roundTrips() {
+        ProductCreatedEvent event = new ProductCreatedEvent(
+                "0198c2d4-5e6f-7a01-8b2c-3d4e5f607182",
+                "Cadeira ergonômica 🪑",
+                new BigDecimal("-98765432109876543210.123456789"),
+                Integer.MIN_VALUE
+        );
+
+        assertThat(deserializer.deserialize(TOPIC, serializer.serialize(TOPIC, event))).isEqualTo(event);
+    }
+
+    @Test
+    void roundTripsAfterGrowingTheThreadLocalBuffer() {
+        String longTitle = "x".repeat(10_000);
+        ProductCreatedEvent large = new ProductCreatedEvent("p-1", longTitle, BigDecimal.ONE, 1);
+        ProductCreatedEvent small = new ProductCreatedEvent("p-2", "small", BigDecimal.TEN, 2);
+
+        assertThat(deserializer.deserialize(TOPIC, serializer.serialize(TOPIC, large))).isEqualTo(large);
+        // O buffer da thread é reaproveitado: o evento seguinte não pode carregar sobras do anterior
+        assertThat(deserializer.deserialize(TOPIC, serializer.serialize(TOPIC, small))).isEqualTo(small);
+    }
+
+    @Test
+    void nullEventAndNullDataStayNull() {
+        assertThat(serializer.serialize(TOPIC, null)).isNull();
+        assertThat(deserializer.deserialize(TOPIC, (byte[]) null)).isNull();
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] data = HexFormat.of().parseHex(EVENT_HEX);
+        data[0] = 2;
+
+        assertThatThrownBy(() -> deserializer.deserialize(TOPIC, data))
+                .isInstanceOf(SerializationException.class)
+                .hasMessageContaining("version");
+    }
+
+    @Test
+    void rejectsTruncatedPayload() {
+        byte[] data = HexFormat.of().parseHex(EVENT_HEX);
+
+        for (int length = 1; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThatThrownBy(() -> deserializer.deserialize(TOPIC, truncated))
+                    .isInstanceOf(SerializationException.class);
+        }
+    }
+}
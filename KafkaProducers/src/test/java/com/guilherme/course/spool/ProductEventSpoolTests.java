@@ -0,0 +1,243 @@
+package com.guilherme.course.spool;
+
+import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.util.ConstantUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProductEventSpoolTests {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysAppendedRecordsInSpoolOrder() throws IOException {
+        ProductEventSpool spool = open(SEGMENT_SIZE);
+        for (int i = 0; i < 3; i++) {
+            spool.append(productRecord(i));
+        }
+
+        ProductEventSpool.ReplayBatch batch = spool.peek(10);
+
+        assertThat(spool.depth()).isEqualTo(3);
+        assertRecords(batch.records(), 0, 3);
+
+        spool.commit(batch);
+
+        assertThat(spool.depth()).isZero();
+        assertThat(spool.hasPending()).isFalse();
+        assertThat(spool.peek(10).records()).isEmpty();
+    }
+
+    @Test
+    void peekWithoutCommitReturnsTheSameBatch() throws IOException {
+        ProductEventSpool spool = open(SEGMENT_SIZE);
+        for (int i = 0; i < 3; i++) {
+            spool.append(productRecord(i));
+        }
+
+        assertRecords(spool.peek(2).records(), 0, 2);
+        assertRecords(spool.peek(2).records(), 0, 2);
+        assertThat(spool.depth()).isEqualTo(3);
+    }
+
+    @Test
+    void resumesFromCheckpointAfterRestart() throws IOException {
+        ProductEventSpool spool = open(SEGMENT_SIZE);
+        for (int i = 0; i < 5; i++) {
+            spool.append(productRecord(i));
+        }
+        spool.commit(spool.peek(2));
+        spool.close();
+
+        ProductEventSpool reopened = open(SEGMENT_SIZE);
+
+        assertThat(reopened.depth()).isEqualTo(3);
+        assertRecords(reopened.peek(10).records(), 2, 5);
+    }
+
+    @Test
+    void replaysUncommittedBatchAgainAfterRestart() throws IOException {
+        ProductEventSpool spool = open(SEGMENT_SIZE);
+        for (int i = 0; i < 3; i++) {
+            spool.append(productRecord(i));
+        }
+        spool.peek(10);
+        spool.close();
+
+        ProductEventSpool reopened = open(SEGMENT_SIZE);
+
+        assertThat(reopened.depth()).isEqualTo(3);
+        assertRecords(reopened.peek(10).records(), 0, 3);
+    }
+
+    @Test
+    void startsFromFirstSegmentWhenCheckpointIsCorrupted() throws IOException {
+        ProductEventSpool spool = open(SEGMENT_SIZE);
+        for (int i = 0; i < 4; i++) {
+            spool.append(productRecord(i));
+        }
+        spool.commit(spool.peek(2));
+        spool.close();
+
+        overwrite(directory.resolve("checkpoint"), 2 * Long.BYTES, new byte[]{1, 2, 3, 4});
+        ProductEventSpool reopened = open(SEGMENT_SIZE);
+
+        // Sem um checkpoint válido, o replay recomeça do início: duplicatas são descartadas pelo messageId no consumer
+        assertThat(reopened.depth()).isEqualTo(4);
+        assertRecords(reopened.peek(10).records(), 0, 4);
+    }
+
+    @Test
+    void discardsTornFrameOnRecoveryAndKeepsAppending() throws IOException {
+        ProductEventSpool spool = open(SEGMENT_SIZE);
+        spool.append(productRecord(0));
+        spool.append(productRecord(1));
+        int end = spool.peek(10).endPosition();
+        spool.close();
+
+        // Crash no meio de um append: o tamanho chegou ao disco, mas o CRC e o payload não
+        overwrite(singleSegment(), end, ByteBuffer.allocate(Integer.BYTES).putInt(60).array());
+        ProductEventSpool reopened = open(SEGMENT_SIZE);
+
+        assertThat(reopened.depth()).isEqualTo(2);
+
+        // O próximo append ocupa o lugar do frame descartado
+        reopened.append(productRecord(2));
+        assertRecords(reopened.peek(10).records(), 0, 3);
+        assertThat(reopened.depth()).isEqualTo(3);
+    }
+
+    @Test
+    void stopsAtFrameWithInvalidCrc() throws IOException {
+        ProductEventSpool spool = open(SEGMENT_SIZE);
+        for (int i = 0; i < 3; i++) {
+            spool.append(productRecord(i));
+        }
+        int secondFrame = spool.peek(1).endPosition();
+        spool.close();
+
+        // Um byte do payload do segundo frame muda: o CRC não bate, e nada depois dele é confiável
+        overwrite(singleSegment(), secondFrame + 2 * Integer.BYTES + 1, new byte[]{(byte) 0xFF});
+        ProductEventSpool reopened = open(SEGMENT_SIZE);
+
+        assertThat(reopened.depth()).isEqualTo(1);
+        assertRecords(reopened.peek(10).records(), 0, 1);
+    }
+
+    @Test
+    void rollsSegmentsAndDeletesReplayedOnes() throws IOException {
+        // Segmentos pequenos, com poucos frames cada
+        ProductEventSpool spool = open(256);
+        for (int i = 0; i < 10; i++) {
+            spool.append(productRecord(i));
+        }
+        assertThat(segments()).hasSizeGreaterThan(2);
+
+        int replayed = 0;
+        while (replayed < 6) {
+            ProductEventSpool.ReplayBatch batch = spool.peek(6 - replayed);
+            assertRecords(batch.records(), replayed, replayed + batch.records().size());
+            spool.commit(batch);
+            replayed += batch.records().size();
+        }
+        spool.close();
+
+        ProductEventSpool reopened = open(256);
+
+        assertThat(reopened.depth()).isEqualTo(4);
+        assertThat(segments()).hasSizeLessThan(4);
+        assertRecords(drain(reopened), 6, 10);
+    }
+
+    @Test
+    void rejectsRecordLargerThanSegment() throws IOException {
+        ProductEventSpool spool = open(64);
+
+        assertThatThrownBy(() -> spool.append(productRecord(0))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(spool.depth()).isZero();
+    }
+
+    private ProductEventSpool open(int segmentSize) throws IOException {
+        ProductEventSpool spool = new ProductEventSpool(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(spool, "enabled", true);
+        ReflectionTestUtils.setField(spool, "directory", directory.toString());
+        ReflectionTestUtils.setField(spool, "segmentSize", segmentSize);
+        spool.init();
+        return spool;
+    }
+
+    private static ProducerRecord<String, ProductCreatedEvent> productRecord(int i) {
+        ProducerRecord<String, ProductCreatedEvent> producerRecord = new ProducerRecord<>(
+                ConstantUtil.PRODUCT_CREATED_EVENTS_TOPIC,
+                "product-" + i,
+                new ProductCreatedEvent("product-" + i, "Title " + i, new BigDecimal("10.50"), i)
+        );
+        producerRecord.headers().add(ConstantUtil.MESSAGE_ID_HEADER, messageId(i));
+        return producerRecord;
+    }
+
+    private static byte[] messageId(int i) {
+        return ByteBuffer.allocate(16).putLong(0x0198C2D45E6F7A01L).putLong(i).array();
+    }
+
+    // Confere que `records` são os registros productRecord(from) até productRecord(to - 1), nessa ordem
+    private static void assertRecords(List<SpooledRecord> records, int from, int to) {
+        assertThat(records).hasSize(to - from);
+        for (int i = from; i < to; i++) {
+            SpooledRecord spooledRecord = records.get(i - from);
+            ProducerRecord<String, ProductCreatedEvent> expected = productRecord(i);
+
+            assertThat(spooledRecord.key()).isEqualTo(expected.key());
+            assertThat(spooledRecord.messageId()).isEqualTo(messageId(i));
+            assertThat(spooledRecord.event()).isEqualTo(expected.value());
+        }
+    }
+
+    private static List<SpooledRecord> drain(ProductEventSpool spool) {
+        List<SpooledRecord> records = new ArrayList<>();
+        ProductEventSpool.ReplayBatch batch;
+        while (!(batch = spool.peek(100)).records().isEmpty()) {
+            records.addAll(batch.records());
+            spool.commit(batch);
+        }
+        return records;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".spool")).sorted().toList();
+        }
+    }
+
+    private Path singleSegment() throws IOException {
+        List<Path> segments = segments();
+        assertThat(segments).hasSize(1);
+        return segments.get(0);
+    }
+
+    // Escreve direto no arquivo, como um crash (ou um disco corrompido) deixaria
+    private static void overwrite(Path file, long position, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+}
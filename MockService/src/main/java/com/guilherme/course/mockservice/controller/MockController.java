@@ -1,10 +1,16 @@
 package com.guilherme.course.mockservice.controller;
 
+import com.guilherme.course.mockservice.dto.BatchItemResult;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/response")
 public class MockController {
@@ -17,4 +23,15 @@ public class MockController {
     public ResponseEntity<String> badResponse() {
         return ResponseEntity.internalServerError().body("500");
     }
+
+    /*
+     * Versão em batch do /200: recebe N ids e responde N resultados, na mesma ordem
+     *  Usado pelo cliente que agrupa as chamadas do businessLogic no KafkaConsumers (uma requisição para vários registros)
+     */
+    @PostMapping("/200/batch")
+    public ResponseEntity<List<BatchItemResult>> goodBatchResponse(@RequestBody List<String> ids) {
+        return ResponseEntity.ok(ids.stream()
+                .map(id -> new BatchItemResult(id, HttpStatus.OK.value()))
+                .toList());
+    }
 }
@@ -0,0 +1,8 @@
+package com.guilherme.course.mockservice.dto;
+
+// Resultado de um item do batch: mesmo status que a chamada individual responderia
+public record BatchItemResult(
+        String id,
+        int status
+) {
+}
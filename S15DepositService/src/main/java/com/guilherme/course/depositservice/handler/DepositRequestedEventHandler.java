@@ -10,6 +10,10 @@ import org.springframework.stereotype.Component;
 @Slf4j
 @Component
 @KafkaListener(topics = ConstantUtil.DEPOSIT_MONEY_TOPIC)
+// Um listener por tier de retry, para que o atraso de um tier não segure os registros dos outros
+@KafkaListener(topics = ConstantUtil.DEPOSIT_MONEY_RETRY_1_TOPIC, containerFactory = "retryKafkaListenerContainerFactory")
+@KafkaListener(topics = ConstantUtil.DEPOSIT_MONEY_RETRY_2_TOPIC, containerFactory = "retryKafkaListenerContainerFactory")
+@KafkaListener(topics = ConstantUtil.DEPOSIT_MONEY_RETRY_3_TOPIC, containerFactory = "retryKafkaListenerContainerFactory")
 public class DepositRequestedEventHandler {
     @KafkaHandler
     public void handle(DepositRequestedEvent event) {
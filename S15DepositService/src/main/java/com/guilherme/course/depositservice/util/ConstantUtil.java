@@ -6,4 +6,9 @@ public class ConstantUtil {
     }
 
     public static final String DEPOSIT_MONEY_TOPIC = "deposit-money-topic";
+
+    // Tiers de retry do deposit-money-topic (ver RetryTopicRouter)
+    public static final String DEPOSIT_MONEY_RETRY_1_TOPIC = DEPOSIT_MONEY_TOPIC + "-retry-1";
+    public static final String DEPOSIT_MONEY_RETRY_2_TOPIC = DEPOSIT_MONEY_TOPIC + "-retry-2";
+    public static final String DEPOSIT_MONEY_RETRY_3_TOPIC = DEPOSIT_MONEY_TOPIC + "-retry-3";
 }
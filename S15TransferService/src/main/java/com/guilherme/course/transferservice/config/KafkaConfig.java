@@ -5,8 +5,10 @@ import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -45,28 +47,55 @@ public class KafkaConfig {
     @Value("${spring.kafka.producer.properties.max.in.flight.requests.per.connection}")
     private int maxInFlightRequestsPerConnection;
 
+    @Value("${app.transfer.group-commit.transaction-id-prefix}")
+    private String transactionIdPrefix;
+
+    @Value("${app.transfer.group-commit.instance-id}")
+    private String instanceId;
+
     @Bean
     public ProducerFactory<String, Object> producerFactory() {
-        Map<String, Object> config = new HashMap<>();
-
-        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, bootstrapServers);
-        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, bootstrapServers);
-        config.put(ProducerConfig.ACKS_CONFIG, bootstrapServers);
-        config.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, bootstrapServers);
-        config.put(ProducerConfig.LINGER_MS_CONFIG, bootstrapServers);
-        config.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, bootstrapServers);
-        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, bootstrapServers);
-        config.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, bootstrapServers);
-
-        return new DefaultKafkaProducerFactory<>(config);
+        return new DefaultKafkaProducerFactory<>(producerConfig());
     }
 
     @Bean
+    @Primary    // Usado pelo modo direct; o modo group-commit usa o transactionalKafkaTemplate
     public KafkaTemplate<String, Object> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactory());
     }
 
+    /*
+     * Template transacional do modo group-commit (ver TransferGroupCommitter)
+     *
+     * Com o transaction-id-prefix, cada producer tem um transactional.id e os envios feitos dentro de
+     *  executeInTransaction só ficam visíveis (para consumers com read_committed) quando a transação é commitada
+     *
+     * O instance-id entra no prefixo: com o mesmo transactional.id em duas instâncias, a segunda faria o fence da primeira
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.transfer.mode", havingValue = "group-commit")
+    public KafkaTemplate<String, Object> transactionalKafkaTemplate() {
+        DefaultKafkaProducerFactory<String, Object> factory = new DefaultKafkaProducerFactory<>(producerConfig());
+        factory.setTransactionIdPrefix(transactionIdPrefix + instanceId + "-");
+        return new KafkaTemplate<>(factory);
+    }
+
+    private Map<String, Object> producerConfig() {
+        Map<String, Object> config = new HashMap<>();
+
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, keySerializer);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, valueSerializer);
+        config.put(ProducerConfig.ACKS_CONFIG, acks);
+        config.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, deliveryTimeoutMs);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        config.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, requestTimeoutMs);
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, idempotence);
+        config.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, maxInFlightRequestsPerConnection);
+
+        return config;
+    }
+
     @Bean
     public NewTopic createWithdrawalTopic() {
         return TopicBuilder
@@ -1,15 +1,34 @@
 package com.guilherme.course.transferservice.config;
 
+import com.guilherme.course.kafka.client.CachingExchangeFilterFunction;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.WebClient;
 
 @Configuration
 public class WebClientConfig {
+    @Value("${app.remote.cache.enabled}")
+    private boolean cacheEnabled;
+
+    @Value("${app.remote.cache.max-entries}")
+    private int cacheMaxEntries;
+
+    @Value("${app.remote.cache.route-ttls}")
+    private String cacheRouteTtls;
+
+    // As respostas das rotas idempotentes são reaproveitadas pelo CachingExchangeFilterFunction
     @Bean
-    public WebClient webClient() {
+    public WebClient webClient(CachingExchangeFilterFunction cachingExchangeFilterFunction) {
         return WebClient.builder()
                 .baseUrl("http://localhost:8082")
+                .filter(cachingExchangeFilterFunction)
                 .build();
     }
+
+    @Bean
+    public CachingExchangeFilterFunction cachingExchangeFilterFunction(MeterRegistry meterRegistry) {
+        return new CachingExchangeFilterFunction(meterRegistry, cacheEnabled, cacheMaxEntries, cacheRouteTtls);
+    }
 }
@@ -9,14 +9,23 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/transfers")
 @RequiredArgsConstructor
 public class TransferController {
     private final TransferService transferService;
 
+    /*
+     * Retornar um CompletableFuture libera a thread do Tomcat no modo group-commit: a chamada remota e o commit do grupo
+     *  acontecem fora dela, e a resposta só é escrita quando a transação do grupo da transferência for commitada
+     *
+     * No modo direct a transferência inteira (envios e chamada remota) ainda roda na thread do Tomcat, e o future já
+     *  volta completo
+     */
     @PostMapping
-    public ResponseEntity<Boolean> transfer(@RequestBody TransferCommand command) {
-        return ResponseEntity.ok(transferService.transfer(command));
+    public CompletableFuture<ResponseEntity<Boolean>> transfer(@RequestBody TransferCommand command) {
+        return transferService.transfer(command).thenApply(ResponseEntity::ok);
     }
 }
@@ -0,0 +1,168 @@
+package com.guilherme.course.transferservice.producer;
+
+import com.guilherme.course.transferservice.events.DepositRequestedEvent;
+import com.guilherme.course.transferservice.events.WithdrawalRequestedEvent;
+import com.guilherme.course.transferservice.util.ConstantUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modo group-commit (app.transfer.mode=group-commit): publica o saque e o depósito das transferências em transações
+ *  do Kafka, agrupando as transferências que chegam ao mesmo tempo.
+ *
+ * Por que existe?
+ *  - Os dois eventos iam em envios independentes: uma queda entre eles publicava o saque sem o depósito
+ *  - Uma transação por transferência resolve isso, mas cada commit custa idas e voltas ao coordenador de transações
+ *
+ * Como funciona:
+ *  - Cada transferência entra em uma fila e recebe um CompletableFuture
+ *  - Uma única thread pega a primeira da fila e espera até `max-wait-ms` por outras (ou até `max-transfers`)
+ *  - O grupo inteiro vai em uma transação: os dois eventos de todas as transferências do grupo
+ *  - Commitou -> todos os futures completam; abortou -> todos completam com a exceção e nenhum evento fica visível
+ *
+ * Uma única thread commitando mantém a ordem de chegada entre os grupos: os saques de um mesmo remetente (chave
+ *  senderId) chegam ao withdraw-money-topic na ordem em que as transferências foram aceitas.
+ *
+ * Métricas: transfer.group.size (transferências por transação) e transfer.group.commit (tempo da transação)
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.transfer.mode", havingValue = "group-commit")
+public class TransferGroupCommitter {
+    private final KafkaTemplate<String, Object> transactionalKafkaTemplate;
+    private final MeterRegistry meterRegistry;
+    private final BlockingQueue<PendingTransfer> queue = new LinkedBlockingQueue<>();
+
+    @Value("${app.transfer.group-commit.max-wait-ms}")
+    private long maxWaitMs;
+
+    @Value("${app.transfer.group-commit.max-transfers}")
+    private int maxTransfers;
+
+    private volatile boolean running = true;
+    private Thread committerThread;
+    private DistributionSummary groupSize;
+    private Timer commitTimer;
+
+    public TransferGroupCommitter(
+            @Qualifier("transactionalKafkaTemplate") KafkaTemplate<String, Object> transactionalKafkaTemplate,
+            MeterRegistry meterRegistry
+    ) {
+        this.transactionalKafkaTemplate = transactionalKafkaTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    private record PendingTransfer(
+            WithdrawalRequestedEvent withdrawal,
+            DepositRequestedEvent deposit,
+            CompletableFuture<Void> committed
+    ) {
+    }
+
+    @PostConstruct
+    void start() {
+        groupSize = DistributionSummary.builder("transfer.group.size")
+                .description("Transfers committed in each Kafka transaction")
+                .register(meterRegistry);
+        commitTimer = Timer.builder("transfer.group.commit")
+                .description("Time to commit a group of transfers")
+                .register(meterRegistry);
+
+        committerThread = Thread.ofPlatform().name("transfer-group-committer").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        committerThread.interrupt();
+        committerThread.join(TimeUnit.SECONDS.toMillis(10));
+
+        List<PendingTransfer> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        fail(pending, new IllegalStateException("Transfer service is shutting down"));
+    }
+
+    // Completa quando o grupo da transferência for commitado (ou com a exceção, se a transação abortar)
+    public CompletableFuture<Void> submit(WithdrawalRequestedEvent withdrawal, DepositRequestedEvent deposit) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Transfer service is shutting down"));
+        }
+
+        PendingTransfer transfer = new PendingTransfer(withdrawal, deposit, new CompletableFuture<>());
+        queue.add(transfer);
+        return transfer.committed();
+    }
+
+    private void run() {
+        List<PendingTransfer> group = new ArrayList<>(maxTransfers);
+
+        while (running) {
+            try {
+                group.add(queue.take());
+
+                // Espera por mais transferências até o prazo do grupo, contado a partir da primeira
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (group.size() < maxTransfers) {
+                    PendingTransfer next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+
+                commit(group);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                fail(group, new IllegalStateException("Transfer service is shutting down", ex));
+                return;
+            }
+            group.clear();
+        }
+    }
+
+    private void commit(List<PendingTransfer> group) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        try {
+            transactionalKafkaTemplate.executeInTransaction(operations -> {
+                for (PendingTransfer transfer : group) {
+                    WithdrawalRequestedEvent withdrawal = transfer.withdrawal();
+                    DepositRequestedEvent deposit = transfer.deposit();
+
+                    operations.send(ConstantUtil.WITHDRAW_MONEY_TOPIC, withdrawal.senderId(), withdrawal);
+                    operations.send(ConstantUtil.DEPOSIT_MONEY_TOPIC, deposit.recipientId(), deposit);
+                }
+                return null;
+            });
+
+            group.forEach(transfer -> transfer.committed().complete(null));
+            log.info("Committed group of {} transfers", group.size());
+        } catch (RuntimeException ex) {
+            log.error("Transaction with {} transfers aborted: {}", group.size(), ex.getMessage(), ex);
+            fail(group, ex);
+        } finally {
+            sample.stop(commitTimer);
+            groupSize.record(group.size());
+        }
+    }
+
+    private static void fail(List<PendingTransfer> transfers, Exception ex) {
+        transfers.forEach(transfer -> transfer.committed().completeExceptionally(ex));
+    }
+}
@@ -4,9 +4,11 @@ import com.guilherme.course.transferservice.command.TransferCommand;
 import com.guilherme.course.transferservice.events.DepositRequestedEvent;
 import com.guilherme.course.transferservice.events.WithdrawalRequestedEvent;
 import com.guilherme.course.transferservice.exceptions.TransferServiceException;
+import com.guilherme.course.transferservice.producer.TransferGroupCommitter;
 import com.guilherme.course.transferservice.util.ConstantUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -14,14 +16,61 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class TransferService {
     private final KafkaTemplate<String, Object> kafkaTemplate;
     private final WebClient webClient;
+    private final ObjectProvider<TransferGroupCommitter> transferGroupCommitter;
+
+    /*
+     * Modo da publicação (app.transfer.mode):
+     *  - direct       -> dois envios independentes, com a chamada remota entre eles (uma queda pode publicar só o saque)
+     *  - group-commit -> a chamada remota vem antes, e o saque e o depósito vão juntos na transação do grupo
+     *                      (ver TransferGroupCommitter). Nada bloqueia a thread que chamou: a chamada remota é
+     *                      assíncrona e o future completa quando o grupo é commitado
+     *
+     * Nos dois modos, o saque tem o senderId como chave e o depósito o recipientId, mantendo a ordem por conta
+     */
+    public CompletableFuture<Boolean> transfer(TransferCommand command) {
+        TransferGroupCommitter groupCommitter = transferGroupCommitter.getIfAvailable();
+        if (groupCommitter == null) {
+            return CompletableFuture.completedFuture(transferDirectly(command));
+        }
 
-    public boolean transfer(TransferCommand command) {
+        WithdrawalRequestedEvent withdrawalEvent = new WithdrawalRequestedEvent(
+                command.senderId(),
+                command.recipientId(),
+                command.amount()
+        );
+
+        DepositRequestedEvent depositEvent = new DepositRequestedEvent(
+                command.senderId(),
+                command.recipientId(),
+                command.amount()
+        );
+
+        return remoteServiceResponse().toFuture()
+                .thenCompose(response -> {
+                    log.info("Received response from mock service: {}", response);
+                    return groupCommitter.submit(withdrawalEvent, depositEvent);
+                })
+                .handle((ignored, ex) -> {
+                    if (ex != null) {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        log.error(cause.getMessage(), cause);
+                        throw new TransferServiceException(cause);
+                    }
+                    log.info("Sent events to withdrawal and deposit topics");
+                    return true;
+                });
+    }
+
+    private boolean transferDirectly(TransferCommand command) {
         WithdrawalRequestedEvent withdrawalEvent = new WithdrawalRequestedEvent(
                 command.senderId(),
                 command.recipientId(),
@@ -35,12 +84,12 @@ public class TransferService {
         );
 
         try {
-            kafkaTemplate.send(ConstantUtil.WITHDRAW_MONEY_TOPIC, withdrawalEvent);
+            kafkaTemplate.send(ConstantUtil.WITHDRAW_MONEY_TOPIC, command.senderId(), withdrawalEvent);
             log.info("Sent event to withdrawal topic");
 
             this.callRemoteService();
 
-            kafkaTemplate.send(ConstantUtil.DEPOSIT_MONEY_TOPIC, depositEvent);
+            kafkaTemplate.send(ConstantUtil.DEPOSIT_MONEY_TOPIC, command.recipientId(), depositEvent);
             log.info("Sent event to deposit topic");
         } catch (Exception ex) {
             log.error(ex.getMessage(), ex);
@@ -51,16 +100,19 @@ public class TransferService {
     }
 
     private void callRemoteService() {
-        String response = webClient.get()
+        String response = remoteServiceResponse().block();
+
+        log.info("Received response from mock service: {}", response);
+    }
+
+    private Mono<String> remoteServiceResponse() {
+        return webClient.get()
                 .uri("/response/200")
                 .retrieve()
                 .onStatus(
                         HttpStatus.INTERNAL_SERVER_ERROR::equals,
                         clientResponse -> Mono.error(new Exception("Destination Microservice not available"))
                 )
-                .bodyToMono(String.class)
-                .block();
-
-        log.info("Received response from mock service: {}", response);
+                .bodyToMono(String.class);
     }
 }
@@ -2,8 +2,10 @@ package com.guilherme.course.withdrawalservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class S15WithdrawalServiceApplication {
 
 	public static void main(String[] args) {
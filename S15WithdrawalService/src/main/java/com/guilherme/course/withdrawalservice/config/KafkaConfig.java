@@ -1,24 +1,40 @@
 package com.guilherme.course.withdrawalservice.config;
 
+import com.guilherme.course.kafka.metrics.FailureMetricsRetryListener;
+import com.guilherme.course.kafka.metrics.MetricsRecordInterceptor;
+import com.guilherme.course.kafka.retry.ConsumerLagMonitor;
+import com.guilherme.course.kafka.retry.RetryDelayContainerCustomizer;
+import com.guilherme.course.kafka.retry.RetryTopicRouter;
+import com.guilherme.course.kafka.scaling.ListenerConcurrencyAutoscaler;
+import com.guilherme.course.kafka.serialization.TopicBoundJsonDeserializer;
+import com.guilherme.course.withdrawalservice.events.WithdrawalRequestedEvent;
 import com.guilherme.course.withdrawalservice.exceptions.NotRetryableException;
 import com.guilherme.course.withdrawalservice.exceptions.RetryableException;
+import com.guilherme.course.withdrawalservice.util.ConstantUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
-import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.util.backoff.FixedBackOff;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -32,8 +48,17 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.properties.spring.json.trusted.packages}")
     private String trustedPackages;
 
+    @Value("${app.kafka.consumer.deserializer}")
+    private String deserializerMode;
+
+    @Value("${app.kafka.retry.initial-delay-ms}")
+    private long retryInitialDelayMs;
+
+    @Value("${app.kafka.retry.multiplier}")
+    private double retryMultiplier;
+
     @Bean
-    public ConsumerFactory<String, Object> consumerFactory() {
+    public ConsumerFactory<String, Object> consumerFactory(MeterRegistry meterRegistry) {
         Map<String, Object> config = new HashMap<>();
 
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
@@ -43,29 +68,148 @@ public class KafkaConfig {
         config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         config.put(JsonDeserializer.TRUSTED_PACKAGES, trustedPackages);
 
-        return new DefaultKafkaConsumerFactory<>(config);
+        // Só entrega eventos de transações commitadas: o S15TransferService publica o saque e o depósito de uma
+        //  transferência na mesma transação (ver TransferGroupCommitter), e uma transação abortada nunca é lida
+        config.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+
+        /*
+         * topic-bound: o WithdrawalRequestedEvent é ligado ao tópico (e aos tiers de retry) na criação do consumer,
+         *  e os headers de tipo são ignorados. Continua dentro do ErrorHandlingDeserializer
+         */
+        DefaultKafkaConsumerFactory<String, Object> factory = "topic-bound".equals(deserializerMode)
+                ? new DefaultKafkaConsumerFactory<>(
+                        config,
+                        StringDeserializer::new,
+                        () -> new ErrorHandlingDeserializer<>(new TopicBoundJsonDeserializer(eventTypesByTopic()))
+                )
+                : new DefaultKafkaConsumerFactory<>(config);
+
+        // Métricas internas de cada KafkaConsumer, inclusive o lag por partição (kafka.consumer.fetch.manager.records.lag)
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+
+        return factory;
+    }
+
+    private static Map<String, Class<?>> eventTypesByTopic() {
+        Map<String, Class<?>> eventTypesByTopic = new HashMap<>();
+        eventTypesByTopic.put(ConstantUtil.WITHDRAW_MONEY_TOPIC, WithdrawalRequestedEvent.class);
+        RetryTopicRouter.retryTopics(ConstantUtil.WITHDRAW_MONEY_TOPIC)
+                .forEach(topic -> eventTypesByTopic.put(topic, WithdrawalRequestedEvent.class));
+        return eventTypesByTopic;
     }
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(
             ConsumerFactory<String, Object> consumerFactory,
-            KafkaTemplate<String, Object> kafkaTemplate
+            DefaultErrorHandler errorHandler,
+            MeterRegistry meterRegistry
     ) {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
+        factory.setCommonErrorHandler(errorHandler);
+        factory.setRecordInterceptor(new MetricsRecordInterceptor(meterRegistry));
 
-        DefaultErrorHandler errorHandler = new DefaultErrorHandler(
-                new DeadLetterPublishingRecoverer(kafkaTemplate),
-                new FixedBackOff(5000, 3)
-        );
+        return factory;
+    }
 
-        errorHandler.addRetryableExceptions(RetryableException.class);
-        errorHandler.addNotRetryableExceptions(NotRetryableException.class);
+    /*
+     * Tópicos de retry: mesmo error handler, mas um registro antes do horário do seu retry pausa a sua partição até
+     *  lá, sem segurar a thread do consumer (RetryDelayContainerCustomizer)
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> retryKafkaListenerContainerFactory(
+            ConsumerFactory<String, Object> consumerFactory,
+            DefaultErrorHandler errorHandler,
+            RetryDelayContainerCustomizer retryDelayContainerCustomizer,
+            MeterRegistry meterRegistry
+    ) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
         factory.setCommonErrorHandler(errorHandler);
+        factory.setContainerCustomizer(retryDelayContainerCustomizer);
+        factory.setRecordInterceptor(new MetricsRecordInterceptor(meterRegistry));
 
         return factory;
     }
 
+    @Bean
+    public RetryDelayContainerCustomizer retryDelayContainerCustomizer(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry) {
+        return new RetryDelayContainerCustomizer(kafkaListenerEndpointRegistry);
+    }
+
+    @Bean
+    public RetryTopicRouter retryTopicRouter(MeterRegistry meterRegistry) {
+        return new RetryTopicRouter(
+                meterRegistry,
+                retryInitialDelayMs,
+                retryMultiplier,
+                RetryableException.class,
+                NotRetryableException.class
+        );
+    }
+
+    @Bean
+    public ConsumerLagMonitor consumerLagMonitor(KafkaAdmin kafkaAdmin, MeterRegistry meterRegistry) {
+        return new ConsumerLagMonitor(kafkaAdmin, meterRegistry, groupId, ConstantUtil.WITHDRAW_MONEY_TOPIC);
+    }
+
+    // Concurrency do listener do tópico principal ajustada pelo backlog (ver ListenerConcurrencyAutoscaler)
+    @Bean
+    @ConditionalOnProperty(name = "app.kafka.autoscaler.enabled", havingValue = "true")
+    public ListenerConcurrencyAutoscaler listenerConcurrencyAutoscaler(
+            KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+            ConsumerLagMonitor consumerLagMonitor,
+            KafkaAdmin kafkaAdmin,
+            MeterRegistry meterRegistry
+    ) {
+        return new ListenerConcurrencyAutoscaler(
+                kafkaListenerEndpointRegistry,
+                consumerLagMonitor,
+                kafkaAdmin,
+                meterRegistry,
+                ConstantUtil.WITHDRAW_MONEY_TOPIC
+        );
+    }
+
+    /*
+     * Sem retry em memória (antes era FixedBackOff(5000, 3), que parava a partição por até 15s): o registro com erro
+     *  vai para o próximo tópico de retry ou para o DLT, conforme o RetryTopicRouter
+     */
+    @Bean
+    public DefaultErrorHandler errorHandler(
+            KafkaTemplate<String, Object> kafkaTemplate,
+            RetryTopicRouter retryTopicRouter,
+            FailureMetricsRetryListener failureMetricsRetryListener
+    ) {
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(retryTopicRouter.recoverer(kafkaTemplate), new FixedBackOff(0, 0));
+        errorHandler.setRetryListeners(failureMetricsRetryListener);
+
+        return errorHandler;
+    }
+
+    @Bean
+    public FailureMetricsRetryListener failureMetricsRetryListener(MeterRegistry meterRegistry, RetryTopicRouter retryTopicRouter) {
+        return new FailureMetricsRetryListener(meterRegistry, retryTopicRouter);
+    }
+
+    @Bean
+    public KafkaAdmin.NewTopics retryTopics() {
+        List<NewTopic> topics = new ArrayList<>();
+        RetryTopicRouter.retryTopics(ConstantUtil.WITHDRAW_MONEY_TOPIC)
+                .forEach(topic -> topics.add(TopicBuilder.name(topic).partitions(3).replicas(3).build()));
+        topics.add(TopicBuilder.name(RetryTopicRouter.deadLetterTopic(ConstantUtil.WITHDRAW_MONEY_TOPIC))
+                .partitions(3)
+                .replicas(3)
+                .build());
+
+        return new KafkaAdmin.NewTopics(topics.toArray(NewTopic[]::new));
+    }
+
+    @Bean
+    public KafkaAdmin kafkaAdmin() {
+        return new KafkaAdmin(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers));
+    }
+
     @Bean
     public ProducerFactory<String, Object> producerFactory() {
         Map<String, Object> config = new HashMap<>();
@@ -11,6 +11,10 @@ import org.springframework.stereotype.Component;
 @Slf4j
 @Component
 @KafkaListener(topics = ConstantUtil.WITHDRAW_MONEY_TOPIC)
+// Um listener por tier de retry, para que o atraso de um tier não segure os registros dos outros
+@KafkaListener(topics = ConstantUtil.WITHDRAW_MONEY_RETRY_1_TOPIC, containerFactory = "retryKafkaListenerContainerFactory")
+@KafkaListener(topics = ConstantUtil.WITHDRAW_MONEY_RETRY_2_TOPIC, containerFactory = "retryKafkaListenerContainerFactory")
+@KafkaListener(topics = ConstantUtil.WITHDRAW_MONEY_RETRY_3_TOPIC, containerFactory = "retryKafkaListenerContainerFactory")
 public class WithdrawalRequestedEventHandler {
     @KafkaHandler
     public void handle(@Payload WithdrawalRequestedEvent event) {
@@ -6,4 +6,9 @@ public class ConstantUtil {
     }
 
     public static final String WITHDRAW_MONEY_TOPIC = "withdraw-money-topic";
+
+    // Tiers de retry do withdraw-money-topic (ver RetryTopicRouter)
+    public static final String WITHDRAW_MONEY_RETRY_1_TOPIC = WITHDRAW_MONEY_TOPIC + "-retry-1";
+    public static final String WITHDRAW_MONEY_RETRY_2_TOPIC = WITHDRAW_MONEY_TOPIC + "-retry-2";
+    public static final String WITHDRAW_MONEY_RETRY_3_TOPIC = WITHDRAW_MONEY_TOPIC + "-retry-3";
 }
@@ -0,0 +1,159 @@
+package com.guilherme.course.benchmarks;
+
+import com.guilherme.course.depositservice.events.DepositRequestedEvent;
+import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.kafka.serialization.TopicBoundJsonDeserializer;
+import com.guilherme.course.serialization.ProductCreatedEventDeserializer;
+import com.guilherme.course.withdrawalservice.events.WithdrawalRequestedEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Desserialização dos eventos do jeito que os consumers fazem: ErrorHandlingDeserializer envolvendo o
+ *  JsonDeserializer, que resolve o tipo pelos headers. Para o ProductCreatedEvent também mede o
+ *  ProductCreatedEventDeserializer do KafkaConsumers, nos formatos JSON e binário.
+ *
+ * Os benchmarks *TopicBound medem o modo app.kafka.consumer.deserializer=topic-bound: TopicBoundJsonDeserializer
+ *  (mesmo código nos três consumers) com o tipo fixado por tópico, sem ler os headers de tipo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventDeserializationBenchmark {
+    private static final String PRODUCT_TOPIC = "product-created-events";
+    private static final String WITHDRAWAL_TOPIC = "withdraw-money-topic";
+    private static final String DEPOSIT_TOPIC = "deposit-money-topic";
+
+    private ErrorHandlingDeserializer<Object> jsonDeserializer;
+    private ErrorHandlingDeserializer<Object> productDeserializer;
+    private ErrorHandlingDeserializer<Object> topicBoundDeserializer;
+    private ErrorHandlingDeserializer<Object> topicBoundProductDeserializer;
+
+    private byte[] productJson;
+    private Headers productHeaders;
+    private byte[] productBinary;
+    private byte[] withdrawalJson;
+    private Headers withdrawalHeaders;
+    private byte[] depositJson;
+    private Headers depositHeaders;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Mesmas configurações dos KafkaConfig dos consumers
+        Map<String, Object> config = Map.of(JsonDeserializer.TRUSTED_PACKAGES, "com.guilherme.*");
+
+        jsonDeserializer = new ErrorHandlingDeserializer<>(new JsonDeserializer<>());
+        jsonDeserializer.configure(config, false);
+
+        productDeserializer = new ErrorHandlingDeserializer<>(new ProductCreatedEventDeserializer());
+        productDeserializer.configure(config, false);
+
+        Map<String, Class<?>> eventTypesByTopic = Map.of(
+                PRODUCT_TOPIC, ProductCreatedEvent.class,
+                WITHDRAWAL_TOPIC, WithdrawalRequestedEvent.class,
+                DEPOSIT_TOPIC, DepositRequestedEvent.class
+        );
+        topicBoundDeserializer = new ErrorHandlingDeserializer<>(new TopicBoundJsonDeserializer(eventTypesByTopic));
+        topicBoundDeserializer.configure(config, false);
+
+        topicBoundProductDeserializer = new ErrorHandlingDeserializer<>(
+                new ProductCreatedEventDeserializer(new TopicBoundJsonDeserializer(eventTypesByTopic))
+        );
+        topicBoundProductDeserializer.configure(config, false);
+
+        // Os payloads são gerados com o JsonSerializer, que também preenche os headers de tipo
+        try (JsonSerializer<Object> serializer = new JsonSerializer<>()) {
+            ProductCreatedEvent productCreatedEvent = new ProductCreatedEvent(
+                    "5f1c6a3e-8a44-4bb5-9a41-2f7d8e1b9c10", "Benchmark product", new BigDecimal("199.90"), 10
+            );
+
+            productHeaders = new RecordHeaders();
+            productJson = serializer.serialize(PRODUCT_TOPIC, productHeaders, productCreatedEvent);
+            productBinary = encodeBinary(productCreatedEvent);
+
+            withdrawalHeaders = new RecordHeaders();
+            withdrawalJson = serializer.serialize(WITHDRAWAL_TOPIC, withdrawalHeaders,
+                    new WithdrawalRequestedEvent("sender-1", "recipient-1", new BigDecimal("50.00")));
+
+            depositHeaders = new RecordHeaders();
+            depositJson = serializer.serialize(DEPOSIT_TOPIC, depositHeaders,
+                    new DepositRequestedEvent("sender-1", "recipient-1", new BigDecimal("50.00")));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jsonDeserializer.close();
+        productDeserializer.close();
+        topicBoundDeserializer.close();
+        topicBoundProductDeserializer.close();
+    }
+
+    @Benchmark
+    public Object productCreatedEventJson() {
+        return jsonDeserializer.deserialize(PRODUCT_TOPIC, productHeaders, productJson);
+    }
+
+    @Benchmark
+    public Object productCreatedEventJsonViaProductDeserializer() {
+        return productDeserializer.deserialize(PRODUCT_TOPIC, productHeaders, productJson);
+    }
+
+    @Benchmark
+    public Object productCreatedEventJsonViaProductDeserializerTopicBound() {
+        return topicBoundProductDeserializer.deserialize(PRODUCT_TOPIC, productHeaders, productJson);
+    }
+
+    @Benchmark
+    public Object productCreatedEventBinary() {
+        return productDeserializer.deserialize(PRODUCT_TOPIC, new RecordHeaders(), productBinary);
+    }
+
+    @Benchmark
+    public Object withdrawalRequestedEventJson() {
+        return jsonDeserializer.deserialize(WITHDRAWAL_TOPIC, withdrawalHeaders, withdrawalJson);
+    }
+
+    @Benchmark
+    public Object withdrawalRequestedEventJsonTopicBound() {
+        return topicBoundDeserializer.deserialize(WITHDRAWAL_TOPIC, withdrawalHeaders, withdrawalJson);
+    }
+
+    @Benchmark
+    public Object depositRequestedEventJson() {
+        return jsonDeserializer.deserialize(DEPOSIT_TOPIC, depositHeaders, depositJson);
+    }
+
+    @Benchmark
+    public Object depositRequestedEventJsonTopicBound() {
+        return topicBoundDeserializer.deserialize(DEPOSIT_TOPIC, depositHeaders, depositJson);
+    }
+
+    // Mesmo formato do ProductCreatedEventSerializer do KafkaProducers
+    private static byte[] encodeBinary(ProductCreatedEvent event) {
+        byte[] productId = event.productId().getBytes(StandardCharsets.UTF_8);
+        byte[] title = event.title().getBytes(StandardCharsets.UTF_8);
+        byte[] unscaled = event.price().unscaledValue().toByteArray();
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + productId.length + 4 + title.length + 4 + unscaled.length + 4 + 1 + 4);
+        buffer.put(ProductCreatedEventDeserializer.FORMAT_VERSION);
+        buffer.putInt(productId.length).put(productId);
+        buffer.putInt(title.length).put(title);
+        buffer.putInt(unscaled.length).put(unscaled).putInt(event.price().scale());
+        buffer.put((byte) 1).putInt(event.quantity());
+        return buffer.array();
+    }
+}
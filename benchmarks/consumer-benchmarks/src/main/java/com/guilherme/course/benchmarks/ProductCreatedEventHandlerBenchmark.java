@@ -0,0 +1,189 @@
+package com.guilherme.course.benchmarks;
+
+import com.guilherme.course.circuitbreaker.RemoteServiceCircuitBreaker;
+import com.guilherme.course.client.CoalescingRemoteClient;
+import com.guilherme.course.dedup.ProcessedEventDeduplicator;
+import com.guilherme.course.entity.ProcessedEventEntity;
+import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.handler.ProcessedEventWriter;
+import com.guilherme.course.handler.ProductCreatedEventBatchHandler;
+import com.guilherme.course.handler.ProductCreatedEventHandler;
+import com.guilherme.course.metrics.ListenerStageMetrics;
+import com.guilherme.course.offset.ConsumerOffsetStore;
+import com.guilherme.course.repository.ProcessedEventRepository;
+import com.guilherme.course.retention.RetentionWindow;
+import com.guilherme.course.service.ProductCreatedEventService;
+import com.guilherme.course.store.JpaProcessedEventStore;
+import com.guilherme.course.store.ProcessedEventStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Caminho de deduplicação + gravação do ProductCreatedEventHandler contra o H2 em memória.
+ *
+ * O contexto sobe só o JPA (sem Kafka) e a chamada remota do businessLogic é respondida na hora por um
+ *  WebClient falso, para que o número reflita o custo do banco e não o da rede.
+ *
+ * dedupEnabled liga a deduplicação em memória (ProcessedEventDeduplicator) na partição 0, já aquecida. Desligada,
+ *  toda deduplicação é uma consulta ao banco.
+ *
+ * handleNewBatch mede um poll inteiro de BATCH_SIZE registros no modo batch. Para comparar com o modo record,
+ *  divida o tempo dele por BATCH_SIZE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductCreatedEventHandlerBenchmark {
+    private static final String PRODUCT_ID = "5f1c6a3e-8a44-4bb5-9a41-2f7d8e1b9c10";
+    private static final String TOPIC = "product-created-events";
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"true", "false"})
+    public boolean dedupEnabled;
+
+    private ConfigurableApplicationContext context;
+    private ProcessedEventDeduplicator deduplicator;
+    private ProcessedEventRepository repository;
+    private ProductCreatedEventHandler handler;
+    private ProductCreatedEventBatchHandler batchHandler;
+    private TransactionTemplate transactionTemplate;
+    private ProductCreatedEvent event;
+    private byte[] duplicatedMessageId;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration(exclude = KafkaAutoConfiguration.class)
+    @EntityScan(basePackageClasses = ProcessedEventEntity.class)
+    @EnableJpaRepositories(basePackageClasses = ProcessedEventRepository.class)
+    @Import({ ProcessedEventDeduplicator.class, ListenerStageMetrics.class, RetentionWindow.class, ConsumerOffsetStore.class,
+            JpaProcessedEventStore.class })
+    static class HandlerBenchmarkConfig {
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(HandlerBenchmarkConfig.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=500",
+                        "spring.jpa.properties.hibernate.order_inserts=true",
+                        "logging.level.com.guilherme=WARN",
+                        "app.kafka.consumer.dedup.enabled=" + dedupEnabled,
+                        "app.kafka.consumer.dedup.lru-size=10000",
+                        "app.kafka.consumer.dedup.bloom-expected-events-per-second=5",
+                        "app.kafka.consumer.dedup.bloom-false-positive-rate=0.01",
+                        "app.kafka.consumer.dedup.retention-ms=604800000",
+                        "app.kafka.consumer.dedup.bucket-ms=3600000",
+                        "app.kafka.consumer.dedup.purge-chunk-size=5000",
+                        "app.kafka.consumer.store.type=jpa",
+                        "app.kafka.consumer.listener-mode=record",
+                        "app.kafka.consumer.offset-store=kafka",
+                        "spring.kafka.consumer.group-id=benchmark"
+                )
+                .run();
+
+        repository = context.getBean(ProcessedEventRepository.class);
+        deduplicator = context.getBean(ProcessedEventDeduplicator.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK).body("200").build()))
+                .build();
+
+        // Os handlers são criados fora do contexto, então a transação do @Transactional é aberta pelo TransactionTemplate
+        // Criados fora do contexto, sem os @Value: o circuit breaker fica desabilitado e as chamadas não são agrupadas
+        RemoteServiceCircuitBreaker circuitBreaker = new RemoteServiceCircuitBreaker(
+                webClient, context, context.getBean(MeterRegistry.class)
+        );
+        ProductCreatedEventService service = new ProductCreatedEventService(
+                webClient, context.getBean(ProcessedEventStore.class), deduplicator,
+                context.getBean(ListenerStageMetrics.class), circuitBreaker,
+                new CoalescingRemoteClient(webClient, context.getBean(MeterRegistry.class)),
+                context.getBean(RetentionWindow.class)
+        );
+        ConsumerOffsetStore offsetStore = context.getBean(ConsumerOffsetStore.class);
+        handler = new ProductCreatedEventHandler(service, offsetStore);
+        batchHandler = new ProductCreatedEventBatchHandler(service, new ProcessedEventWriter(service, transactionTemplate, offsetStore));
+        event = new ProductCreatedEvent(PRODUCT_ID, "Benchmark product", new BigDecimal("199.90"), 10);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetTable() {
+        repository.deleteAllInBatch();
+
+        duplicatedMessageId = newMessageId();
+        handle(duplicatedMessageId);
+
+        // Mesmo caminho de quando a partição é atribuída ao consumer (ver ProcessedEventDedupRebalanceListener)
+        deduplicator.release(0);
+        deduplicator.warm(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // Mensagem nova: deduplicação + businessLogic + insert
+    @Benchmark
+    public void handleNewEvent() {
+        handle(newMessageId());
+    }
+
+    // Mensagem repetida: só a deduplicação (LRU em memória ou consulta ao banco)
+    @Benchmark
+    public void handleDuplicatedEvent() {
+        handle(duplicatedMessageId);
+    }
+
+    // Poll inteiro de mensagens novas no modo batch: uma consulta de deduplicação + businessLogic + insert em batch
+    @Benchmark
+    public void handleNewBatch() {
+        List<ConsumerRecord<String, Object>> records = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ConsumerRecord<String, Object> consumerRecord = new ConsumerRecord<>(TOPIC, 0, i, PRODUCT_ID, event);
+            consumerRecord.headers().add("messageId", newMessageId());
+            records.add(consumerRecord);
+        }
+        batchHandler.handle(records);
+    }
+
+    private void handle(byte[] messageId) {
+        transactionTemplate.executeWithoutResult(status -> handler.handle(PRODUCT_ID, messageId, 0, 0L, event));
+    }
+
+    // Header binário de 16 bytes, como o enviado pelo KafkaProducers
+    private static byte[] newMessageId() {
+        UUID uuid = UUID.randomUUID();
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+}
@@ -0,0 +1,70 @@
+package com.guilherme.course.benchmarks;
+
+import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.serialization.ProductCreatedEventSerializer;
+import com.guilherme.course.transferservice.events.DepositRequestedEvent;
+import com.guilherme.course.transferservice.events.WithdrawalRequestedEvent;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Serialização dos eventos do jeito que os producers fazem (JsonSerializer com headers de tipo), mais o formato
+ *  binário do ProductCreatedEvent para comparação.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventSerializationBenchmark {
+    private JsonSerializer<Object> jsonSerializer;
+    private ProductCreatedEventSerializer binarySerializer;
+
+    private ProductCreatedEvent productCreatedEvent;
+    private WithdrawalRequestedEvent withdrawalRequestedEvent;
+    private DepositRequestedEvent depositRequestedEvent;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        jsonSerializer = new JsonSerializer<>();
+        binarySerializer = new ProductCreatedEventSerializer();
+
+        productCreatedEvent = new ProductCreatedEvent(
+                "5f1c6a3e-8a44-4bb5-9a41-2f7d8e1b9c10", "Benchmark product", new BigDecimal("199.90"), 10
+        );
+        withdrawalRequestedEvent = new WithdrawalRequestedEvent("sender-1", "recipient-1", new BigDecimal("50.00"));
+        depositRequestedEvent = new DepositRequestedEvent("sender-1", "recipient-1", new BigDecimal("50.00"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jsonSerializer.close();
+        binarySerializer.close();
+    }
+
+    // Um RecordHeaders novo por chamada, como acontece com cada ProducerRecord
+    @Benchmark
+    public byte[] productCreatedEventJson() {
+        return jsonSerializer.serialize("product-created-events", new RecordHeaders(), productCreatedEvent);
+    }
+
+    @Benchmark
+    public byte[] productCreatedEventBinary() {
+        return binarySerializer.serialize("product-created-events", new RecordHeaders(), productCreatedEvent);
+    }
+
+    @Benchmark
+    public byte[] withdrawalRequestedEventJson() {
+        return jsonSerializer.serialize("withdraw-money-topic", new RecordHeaders(), withdrawalRequestedEvent);
+    }
+
+    @Benchmark
+    public byte[] depositRequestedEventJson() {
+        return jsonSerializer.serialize("deposit-money-topic", new RecordHeaders(), depositRequestedEvent);
+    }
+}
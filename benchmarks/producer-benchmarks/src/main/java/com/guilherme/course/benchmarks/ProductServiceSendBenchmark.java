@@ -0,0 +1,117 @@
+package com.guilherme.course.benchmarks;
+
+import com.guilherme.course.admission.ProducerAdmissionController;
+import com.guilherme.course.command.CreateProductCommand;
+import com.guilherme.course.events.ProductCreatedEvent;
+import com.guilherme.course.metrics.ProducerMetrics;
+import com.guilherme.course.producer.KafkaTemplatePool;
+import com.guilherme.course.serialization.ProductCreatedEventSerializer;
+import com.guilherme.course.service.ProductService;
+import com.guilherme.course.spool.ProductEventSpool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Caminho de envio do ProductService (montagem do registro, controle de admissão, serialização e callback)
+ *  contra o MockProducer do Kafka, que completa os envios na hora. Mede o custo do lado do cliente, sem rede.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductServiceSendBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    // O MockProducer guarda todos os registros enviados, então o histórico é limpo de tempos em tempos
+    private static final int CLEAR_HISTORY_EVERY = 10_000;
+
+    @Param({"json", "binary"})
+    public String valueFormat;
+
+    private MockProducer<String, ProductCreatedEvent> mockProducer;
+    private AnnotationConfigApplicationContext context;
+    private ProductService productService;
+    private CreateProductCommand command;
+    private List<CreateProductCommand> batch;
+    private long invocations;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Serializer<ProductCreatedEvent> valueSerializer = "binary".equals(valueFormat)
+                ? new ProductCreatedEventSerializer()
+                : new JsonSerializer<>();
+        mockProducer = new MockProducer<>(true, new StringSerializer(), valueSerializer);
+        KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> mockProducer));
+
+        // Sobe só os beans do caminho de envio, com as mesmas propriedades do application.properties
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "app.kafka.producer.admission.max-in-flight-records", "1000000",
+                "app.kafka.producer.admission.max-in-flight-bytes", "1073741824",
+                "app.kafka.producer.admission.retry-after-seconds", "1",
+                "app.kafka.producer.log.success-sample-every", "1000",
+                "app.kafka.producer.spool.enabled", "false",
+                "app.kafka.producer.spool.directory", "spool",
+                "app.kafka.producer.spool.segment-size-bytes", "16777216"
+        )));
+        // Pool de tamanho 1: a MockProducerFactory não cria cópias reconfiguradas, e todos os envios vão para o mesmo MockProducer
+        context.registerBean("kafkaTemplatePool", KafkaTemplatePool.class,
+                () -> new KafkaTemplatePool<>(kafkaTemplate, 1), bd -> bd.setPrimary(true));
+        context.registerBean("throughputKafkaTemplatePool", KafkaTemplatePool.class, () -> new KafkaTemplatePool<>(kafkaTemplate, 1));
+        context.registerBean(SimpleMeterRegistry.class);
+        context.register(ProducerAdmissionController.class, ProducerMetrics.class, ProductEventSpool.class, ProductService.class);
+        context.refresh();
+
+        productService = context.getBean(ProductService.class);
+        command = new CreateProductCommand("Benchmark product", new BigDecimal("199.90"), 10);
+        batch = Collections.nCopies(BATCH_SIZE, command);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String sendAsync() {
+        clearHistoryIfNeeded(1);
+        return productService.createProductAsynchronously(command);
+    }
+
+    @Benchmark
+    public String sendSync() {
+        clearHistoryIfNeeded(1);
+        return productService.createProductSynchronously(command).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object sendBatch() {
+        clearHistoryIfNeeded(BATCH_SIZE);
+        return productService.createProductsInBatch(batch);
+    }
+
+    private void clearHistoryIfNeeded(int records) {
+        invocations += records;
+        if (invocations >= CLEAR_HISTORY_EVERY) {
+            mockProducer.clear();
+            invocations = 0;
+        }
+    }
+}